@@ -0,0 +1,116 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.app.Activity;
+import android.app.Application.ActivityLifecycleCallbacks;
+import android.os.Bundle;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.lifecycle.LifecycleOwner;
+
+/**
+ * The only {@link ActivityLifecycleCallbacks} registered with the application. It fans activity
+ * events out by type to subscribers that are scoped to a {@link LifecycleOwner} and dropped when
+ * that owner is destroyed, so recreating an activity never stacks up extra callbacks, and an event
+ * nobody subscribed to costs a single check.
+ */
+final class ActivityLifecycleDispatcher implements ActivityLifecycleCallbacks {
+
+  /** Activity lifecycle events a subscriber can ask for. */
+  enum Event {
+    CREATED,
+    STARTED,
+    RESUMED,
+    PAUSED,
+    STOPPED,
+    SAVE_INSTANCE_STATE,
+    DESTROYED
+  }
+
+  /** Interface definition for a callback to be invoked when an activity reaches an event. */
+  interface Listener {
+    void onActivityEvent(@NonNull Activity activity);
+  }
+
+  private final ListenerRegistry<Listener>[] subscribers = newRegistries();
+
+  @SuppressWarnings("unchecked")
+  private static ListenerRegistry<Listener>[] newRegistries() {
+    ListenerRegistry<Listener>[] registries = new ListenerRegistry[Event.values().length];
+    for (int i = 0; i < registries.length; i++) {
+      registries[i] = new ListenerRegistry<>();
+    }
+    return registries;
+  }
+
+  /**
+   * Receive one kind of activity event until the scope is destroyed. Subscribing the same listener
+   * to the same event twice has no effect.
+   */
+  void subscribe(@NonNull LifecycleOwner scope, @NonNull Event event, @NonNull Listener listener) {
+    subscribers[event.ordinal()].add(scope, listener);
+  }
+
+  /** Number of listeners an event is delivered to, which is what dispatching it costs. */
+  @VisibleForTesting
+  int getSubscriberCount(@NonNull Event event) {
+    return subscribers[event.ordinal()].size();
+  }
+
+  private void dispatch(Event event, Activity activity) {
+    ListenerRegistry<Listener> registry = subscribers[event.ordinal()];
+    if (!registry.isEmpty()) {
+      registry.dispatch(listener -> listener.onActivityEvent(activity));
+    }
+  }
+
+  @Override
+  public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) {
+    dispatch(Event.CREATED, activity);
+  }
+
+  @Override
+  public void onActivityStarted(@NonNull Activity activity) {
+    dispatch(Event.STARTED, activity);
+  }
+
+  @Override
+  public void onActivityResumed(@NonNull Activity activity) {
+    dispatch(Event.RESUMED, activity);
+  }
+
+  @Override
+  public void onActivityPaused(@NonNull Activity activity) {
+    dispatch(Event.PAUSED, activity);
+  }
+
+  @Override
+  public void onActivityStopped(@NonNull Activity activity) {
+    dispatch(Event.STOPPED, activity);
+  }
+
+  @Override
+  public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
+    dispatch(Event.SAVE_INSTANCE_STATE, activity);
+  }
+
+  @Override
+  public void onActivityDestroyed(@NonNull Activity activity) {
+    dispatch(Event.DESTROYED, activity);
+  }
+}
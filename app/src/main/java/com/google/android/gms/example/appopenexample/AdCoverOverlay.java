@@ -0,0 +1,158 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.app.Activity;
+import android.content.ComponentCallbacks2;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.FrameMetrics;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.Window;
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+/**
+ * Full-screen cover shown over an activity while an app open ad is on screen. The cover is
+ * inflated once when the activity is created and kept in its window's decor view, above the
+ * action bar and the content, so showing and hiding it only toggles visibility instead of running
+ * a fragment transaction on the frame before the ad. Under memory pressure the hidden cover can be
+ * released and is inflated again on the next show.
+ *
+ * <p>In debug builds, frames drawn while the cover is visible are measured with {@link
+ * FrameMetrics} and added to the app's {@link AdMetrics}, so the jank of real sessions shows up in
+ * the metrics snapshot next to the ad lifecycle counters. The macrobenchmark module measures the
+ * same flow in release-like builds.
+ */
+public final class AdCoverOverlay {
+
+  private final Activity activity;
+  private final FrameJankTracker frameJankTracker;
+  private View coverView;
+
+  /**
+   * Inflate the cover into the activity's decor view. Must be called after {@code setContentView}
+   * so the cover is drawn on top of the activity layout.
+   */
+  public AdCoverOverlay(@NonNull Activity activity) {
+    this.activity = activity;
+    inflate();
+    frameJankTracker =
+        BuildConfig.DEBUG && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+            ? new FrameJankTracker(activity.getWindow())
+            : null;
+  }
+
+  /** Show the cover. Does nothing if it is already showing. */
+  public void show() {
+    if (isShowing()) {
+      return;
+    }
+    if (coverView == null) {
+      inflate();
+    }
+    if (frameJankTracker != null) {
+      frameJankTracker.start();
+    }
+    coverView.setVisibility(View.VISIBLE);
+  }
+
+  /** Hide the cover. Does nothing if it is not showing. */
+  public void hide() {
+    if (!isShowing()) {
+      return;
+    }
+    coverView.setVisibility(View.GONE);
+    if (frameJankTracker != null) {
+      frameJankTracker.stop(((MyApplication) activity.getApplication()).getAdMetrics());
+    }
+  }
+
+  /** Check if the cover is currently showing. */
+  public boolean isShowing() {
+    return coverView != null && coverView.getVisibility() == View.VISIBLE;
+  }
+
+  /**
+   * Release the hidden cover when the system asks to trim memory while the activity is in the
+   * background. It is inflated again on the next {@link #show()}.
+   *
+   * @param level the level passed to {@code onTrimMemory}
+   */
+  public void onTrimMemory(int level) {
+    if (level < ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || coverView == null || isShowing()) {
+      return;
+    }
+    ((ViewGroup) coverView.getParent()).removeView(coverView);
+    coverView = null;
+  }
+
+  private void inflate() {
+    // The decor view rather than android.R.id.content, so the action bar is covered as well.
+    ViewGroup decor = (ViewGroup) activity.getWindow().getDecorView();
+    coverView = LayoutInflater.from(activity).inflate(R.layout.custom_layout, decor, false);
+    coverView.setVisibility(View.GONE);
+    // Swallow touches so the activity underneath cannot be clicked through the cover.
+    coverView.setClickable(true);
+    coverView.findViewById(R.id.skip).setOnClickListener(v -> hide());
+    decor.addView(coverView);
+  }
+
+  /** Counts janky frames of a window between {@link #start()} and {@link #stop}. */
+  @RequiresApi(Build.VERSION_CODES.N)
+  private static final class FrameJankTracker implements Window.OnFrameMetricsAvailableListener {
+
+    /** A frame that takes longer than one 60Hz refresh interval is counted as janky. */
+    private static final long JANK_THRESHOLD_NANOS = 16_666_667L;
+
+    private final Window window;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private int frameCount;
+    private int jankyFrameCount;
+    private long maxFrameNanos;
+
+    FrameJankTracker(Window window) {
+      this.window = window;
+    }
+
+    void start() {
+      frameCount = 0;
+      jankyFrameCount = 0;
+      maxFrameNanos = 0;
+      window.addOnFrameMetricsAvailableListener(this, handler);
+    }
+
+    void stop(@NonNull AdMetrics metrics) {
+      window.removeOnFrameMetricsAvailableListener(this);
+      metrics.recordCoverFrames(frameCount, jankyFrameCount, maxFrameNanos / 1_000_000);
+    }
+
+    @Override
+    public void onFrameMetricsAvailable(
+        Window window, FrameMetrics frameMetrics, int dropCountSinceLastInvocation) {
+      long totalNanos = frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION);
+      frameCount++;
+      jankyFrameCount += dropCountSinceLastInvocation;
+      if (totalNanos > JANK_THRESHOLD_NANOS) {
+        jankyFrameCount++;
+      }
+      maxFrameNanos = Math.max(maxFrameNanos, totalNanos);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-capacity ring buffer of ad lifecycle events. Every slot is pre-allocated as primitive
+ * fields and writers claim slots with a single atomic increment, so recording an event takes no
+ * locks and allocates nothing. Older events are overwritten once the buffer wraps around.
+ *
+ * <p>Each slot carries a sequence number that is published last, so a reader skips slots that are
+ * being overwritten instead of returning torn events. The slot fields are atomic array elements
+ * rather than plain fields so that the second sequence read cannot be reordered before the field
+ * reads.
+ */
+public final class AdEventLog {
+
+  private static final String LOG_TAG = "AdEventLog";
+
+  /** Type of a recorded event. */
+  public enum Type {
+    LOAD_STARTED,
+    AD_LOADED,
+    AD_FAILED_TO_LOAD,
+    AD_SHOWED,
+    AD_DISMISSED,
+    AD_FAILED_TO_SHOW,
+    ADS_RELEASED
+  }
+
+  private static final Type[] TYPES = Type.values();
+
+  private final int capacity;
+  private final AtomicLong nextSequence = new AtomicLong();
+  private final AtomicLongArray sequences;
+  private final AtomicLongArray timestamps;
+  /** Type ordinal in the upper and code in the lower 32 bits. */
+  private final AtomicLongArray details;
+
+  /**
+   * Constructor.
+   *
+   * @param capacity the number of events kept before the oldest ones are overwritten
+   */
+  public AdEventLog(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    this.sequences = new AtomicLongArray(capacity);
+    this.timestamps = new AtomicLongArray(capacity);
+    this.details = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, -1);
+    }
+  }
+
+  /**
+   * Record an event.
+   *
+   * @param type the type of the event
+   * @param code an event specific code, e.g. the error code of a failure, or 0
+   * @param timestampMillis the elapsed realtime the event happened at
+   */
+  public void record(@NonNull Type type, int code, long timestampMillis) {
+    long sequence = nextSequence.getAndIncrement();
+    int slot = (int) (sequence % capacity);
+    // Invalidate the slot while it is being written.
+    sequences.set(slot, -1);
+    timestamps.set(slot, timestampMillis);
+    details.set(slot, ((long) type.ordinal() << 32) | (code & 0xFFFFFFFFL));
+    sequences.set(slot, sequence);
+  }
+
+  /** Number of events recorded since the log was created, including overwritten ones. */
+  public long getRecordedCount() {
+    return nextSequence.get();
+  }
+
+  /** Append the retained events, oldest first, one per line. Meant for debugging only. */
+  public void dump(@NonNull StringBuilder out) {
+    long end = nextSequence.get();
+    long start = Math.max(0, end - capacity);
+    for (long sequence = start; sequence < end; sequence++) {
+      int slot = (int) (sequence % capacity);
+      if (sequences.get(slot) != sequence) {
+        continue;
+      }
+      long timestamp = timestamps.get(slot);
+      long detail = details.get(slot);
+      if (sequences.get(slot) != sequence) {
+        // Overwritten while it was being read.
+        continue;
+      }
+      out.append(sequence)
+          .append(' ')
+          .append(timestamp)
+          .append(' ')
+          .append(TYPES[(int) (detail >>> 32)])
+          .append(' ')
+          .append((int) detail)
+          .append('\n');
+    }
+  }
+
+  /** Write the retained events to logcat. Meant for debug builds only. */
+  public void dumpToLogcat() {
+    StringBuilder out = new StringBuilder();
+    dump(out);
+    Log.d(LOG_TAG, "Ad events (sequence elapsedRealtime type code):\n" + out);
+  }
+}
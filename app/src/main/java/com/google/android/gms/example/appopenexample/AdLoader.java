@@ -0,0 +1,48 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+
+/**
+ * Loads app open ads. The app uses {@link GmsAdLoader}, which goes through the Google Mobile Ads
+ * SDK; {@link FakeAdLoader} serves ads from an in-process fake network instead.
+ */
+public interface AdLoader {
+
+  /** Interface definition for a callback to be invoked when an ad load finishes. */
+  interface LoadCallback {
+    void onAdLoaded(@NonNull ShowableAd ad);
+
+    /**
+     * Called when the ad failed to load.
+     *
+     * @param errorCode one of the {@code AdRequest.ERROR_CODE_*} values
+     * @param message a human readable description of the error
+     */
+    void onAdFailedToLoad(int errorCode, @NonNull String message);
+  }
+
+  /**
+   * Load an ad.
+   *
+   * @param context the context used to load the ad
+   * @param adUnitId the ad unit to request an ad for
+   * @param callback the callback to be notified when the load finishes
+   */
+  void load(@NonNull Context context, @NonNull String adUnitId, @NonNull LoadCallback callback);
+}
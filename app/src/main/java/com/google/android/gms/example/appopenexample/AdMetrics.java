@@ -0,0 +1,280 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import androidx.annotation.NonNull;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Low-overhead metrics for the app open ad lifecycle: lock-free counters plus latency histograms
+ * for loads and for the time from foreground to the ad being on screen. Recording never allocates;
+ * {@link #snapshot()} returns an immutable copy that can be logged or exported to compare builds.
+ */
+public final class AdMetrics {
+
+  private final AtomicLong loadRequests = new AtomicLong();
+  private final AtomicLong loadsFilled = new AtomicLong();
+  private final AtomicLong loadsFailed = new AtomicLong();
+  private final AtomicLong showOpportunities = new AtomicLong();
+  private final AtomicLong showsStarted = new AtomicLong();
+  private final AtomicLong showsCapped = new AtomicLong();
+  private final AtomicLong shortSwitches = new AtomicLong();
+  private final AtomicLong showsFailed = new AtomicLong();
+  private final AtomicLong adsDismissed = new AtomicLong();
+  private final AtomicLong adsExpiredUnused = new AtomicLong();
+  private final AtomicLong adsReplacedUnused = new AtomicLong();
+  private final AtomicLong adsReleasedUnused = new AtomicLong();
+  private final AtomicLong prefetchesAllowed = new AtomicLong();
+  private final AtomicLong prefetchesDeferred = new AtomicLong();
+  private final AtomicLong prefetchesOnDemand = new AtomicLong();
+  private final AtomicLong predictedPreloads = new AtomicLong();
+  private final AtomicLong prefetchesUnlikely = new AtomicLong();
+  private final AtomicLong refreshesSkipped = new AtomicLong();
+  private final AtomicLong coverFrames = new AtomicLong();
+  private final AtomicLong coverJankyFrames = new AtomicLong();
+  private final AtomicLong coverMaxFrameMillis = new AtomicLong();
+  private final LatencyHistogram loadLatency = new LatencyHistogram();
+  private final LatencyHistogram foregroundToShowLatency = new LatencyHistogram();
+
+  /** Record that an ad request was sent. */
+  void recordLoadRequested() {
+    loadRequests.incrementAndGet();
+  }
+
+  /** Record that an ad request returned an ad. */
+  void recordLoadFilled(long latencyMillis) {
+    loadsFilled.incrementAndGet();
+    loadLatency.record(latencyMillis);
+  }
+
+  /** Record that an ad request failed. */
+  void recordLoadFailed(long latencyMillis) {
+    loadsFailed.incrementAndGet();
+    loadLatency.record(latencyMillis);
+  }
+
+  /** Record a chance to show an ad, whether or not one was available. */
+  void recordShowOpportunity() {
+    showOpportunities.incrementAndGet();
+  }
+
+  /** Record a show opportunity that was skipped because of the frequency cap. */
+  void recordShowCapped() {
+    showsCapped.incrementAndGet();
+  }
+
+  /** Record that a return from a short trip to the background skipped the show path. */
+  void recordShortSwitch() {
+    shortSwitches.incrementAndGet();
+  }
+
+  /** Record that an ad started showing. */
+  void recordShowStarted() {
+    showsStarted.incrementAndGet();
+  }
+
+  /**
+   * Record that an ad is on screen.
+   *
+   * @param foregroundToShowMillis time since the app came to the foreground, or -1 if the show was
+   *     not triggered by a foreground event
+   */
+  void recordShowed(long foregroundToShowMillis) {
+    if (foregroundToShowMillis >= 0) {
+      foregroundToShowLatency.record(foregroundToShowMillis);
+    }
+  }
+
+  /** Record that an ad failed to show. */
+  void recordShowFailed() {
+    showsFailed.incrementAndGet();
+  }
+
+  /** Record that an ad was dismissed. */
+  void recordDismissed() {
+    adsDismissed.incrementAndGet();
+  }
+
+  /** Record that cached ads expired before they were shown. */
+  void recordExpiredUnused(int count) {
+    adsExpiredUnused.addAndGet(count);
+  }
+
+  /** Record that cached ads were replaced by fresher ones before they were shown. */
+  void recordReplacedUnused(int count) {
+    adsReplacedUnused.addAndGet(count);
+  }
+
+  /** Record that cached ads were released to free memory before they were shown. */
+  void recordReleasedUnused(int count) {
+    adsReleasedUnused.addAndGet(count);
+  }
+
+  /** Record the outcome of a prefetch policy check. */
+  void recordPrefetchDecision(@NonNull PrefetchPolicy.Decision decision) {
+    switch (decision) {
+      case PREFETCH:
+        prefetchesAllowed.incrementAndGet();
+        break;
+      case DEFER:
+        prefetchesDeferred.incrementAndGet();
+        break;
+      case ON_DEMAND:
+        prefetchesOnDemand.incrementAndGet();
+        break;
+    }
+  }
+
+  /** Record that an ad was loaded in the background shortly before a predicted return. */
+  void recordPredictedPreload() {
+    predictedPreloads.incrementAndGet();
+  }
+
+  /** Record that a background prefetch was skipped because no return looked likely soon. */
+  void recordPrefetchUnlikely() {
+    prefetchesUnlikely.incrementAndGet();
+  }
+
+  /** Record that an expiring ad was not refreshed because a return looked unlikely. */
+  void recordRefreshSkipped() {
+    refreshesSkipped.incrementAndGet();
+  }
+
+  /**
+   * Record the frames drawn while the ad cover was on screen.
+   *
+   * @param frames the number of frames drawn
+   * @param jankyFrames the number of frames that missed their deadline or were dropped
+   * @param maxFrameMillis the duration of the slowest frame
+   */
+  void recordCoverFrames(int frames, int jankyFrames, long maxFrameMillis) {
+    coverFrames.addAndGet(frames);
+    coverJankyFrames.addAndGet(jankyFrames);
+    long max;
+    do {
+      max = coverMaxFrameMillis.get();
+    } while (maxFrameMillis > max && !coverMaxFrameMillis.compareAndSet(max, maxFrameMillis));
+  }
+
+  /** Take an immutable snapshot of every metric. */
+  @NonNull
+  public Snapshot snapshot() {
+    return new Snapshot(this);
+  }
+
+  /** Immutable view of {@link AdMetrics} at one point in time. */
+  public static final class Snapshot {
+    public final long loadRequests;
+    public final long loadsFilled;
+    public final long loadsFailed;
+    public final long showOpportunities;
+    public final long showsStarted;
+    public final long showsCapped;
+    public final long shortSwitches;
+    public final long showsFailed;
+    public final long adsDismissed;
+    public final long adsExpiredUnused;
+    public final long adsReplacedUnused;
+    public final long adsReleasedUnused;
+    public final long prefetchesAllowed;
+    public final long prefetchesDeferred;
+    public final long prefetchesOnDemand;
+    public final long predictedPreloads;
+    public final long prefetchesUnlikely;
+    public final long refreshesSkipped;
+    public final long coverFrames;
+    public final long coverJankyFrames;
+    public final long coverMaxFrameMillis;
+    public final LatencyHistogram.Snapshot loadLatency;
+    public final LatencyHistogram.Snapshot foregroundToShowLatency;
+
+    private Snapshot(AdMetrics metrics) {
+      loadRequests = metrics.loadRequests.get();
+      loadsFilled = metrics.loadsFilled.get();
+      loadsFailed = metrics.loadsFailed.get();
+      showOpportunities = metrics.showOpportunities.get();
+      showsStarted = metrics.showsStarted.get();
+      showsCapped = metrics.showsCapped.get();
+      shortSwitches = metrics.shortSwitches.get();
+      showsFailed = metrics.showsFailed.get();
+      adsDismissed = metrics.adsDismissed.get();
+      adsExpiredUnused = metrics.adsExpiredUnused.get();
+      adsReplacedUnused = metrics.adsReplacedUnused.get();
+      adsReleasedUnused = metrics.adsReleasedUnused.get();
+      prefetchesAllowed = metrics.prefetchesAllowed.get();
+      prefetchesDeferred = metrics.prefetchesDeferred.get();
+      prefetchesOnDemand = metrics.prefetchesOnDemand.get();
+      predictedPreloads = metrics.predictedPreloads.get();
+      prefetchesUnlikely = metrics.prefetchesUnlikely.get();
+      refreshesSkipped = metrics.refreshesSkipped.get();
+      coverFrames = metrics.coverFrames.get();
+      coverJankyFrames = metrics.coverJankyFrames.get();
+      coverMaxFrameMillis = metrics.coverMaxFrameMillis.get();
+      loadLatency = metrics.loadLatency.snapshot();
+      foregroundToShowLatency = metrics.foregroundToShowLatency.snapshot();
+    }
+
+    /** Fraction of ad requests that returned an ad. */
+    public double getFillRate() {
+      return loadRequests == 0 ? 0 : (double) loadsFilled / loadRequests;
+    }
+
+    /** Fraction of show opportunities that put an ad on screen. */
+    public double getShowRate() {
+      return showOpportunities == 0
+          ? 0
+          : (double) (showsStarted - showsFailed) / showOpportunities;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+      return String.format(
+          "loads=%d filled=%d failed=%d fillRate=%.3f | opportunities=%d capped=%d"
+              + " shortSwitches=%d shows=%d showFailed=%d dismissed=%d showRate=%.3f"
+              + " | expiredUnused=%d replacedUnused=%d releasedUnused=%d"
+              + " | prefetch=%d deferred=%d onDemand=%d predicted=%d"
+              + " unlikely=%d refreshSkipped=%d"
+              + " | coverFrames=%d coverJanky=%d coverMaxFrameMs=%d"
+              + " | loadLatency[%s] foregroundToShow[%s]",
+          loadRequests,
+          loadsFilled,
+          loadsFailed,
+          getFillRate(),
+          showOpportunities,
+          showsCapped,
+          shortSwitches,
+          showsStarted,
+          showsFailed,
+          adsDismissed,
+          getShowRate(),
+          adsExpiredUnused,
+          adsReplacedUnused,
+          adsReleasedUnused,
+          prefetchesAllowed,
+          prefetchesDeferred,
+          prefetchesOnDemand,
+          predictedPreloads,
+          prefetchesUnlikely,
+          refreshesSkipped,
+          coverFrames,
+          coverJankyFrames,
+          coverMaxFrameMillis,
+          loadLatency,
+          foregroundToShowLatency);
+    }
+  }
+}
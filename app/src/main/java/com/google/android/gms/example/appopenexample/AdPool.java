@@ -0,0 +1,153 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import java.util.ArrayDeque;
+
+/**
+ * Bounded pool of preloaded ads. Entries are kept in load order, so the oldest ad (the first to
+ * expire) sits at the head and the freshest one at the tail. Expired entries are evicted whenever
+ * the pool is touched, and the freshest valid ad is handed out in constant time.
+ *
+ * @param <T> the type of the pooled ad
+ */
+final class AdPool<T> {
+
+  /** Interface definition for callbacks to be invoked when pooled ads are dropped unused. */
+  interface OnEvictedListener {
+    /** Called when ads were dropped because they outlived the TTL. */
+    void onExpired(int count);
+
+    /** Called when an ad was dropped to make room for a fresher one. */
+    void onReplaced(int count);
+  }
+
+  /** A pooled ad together with the time it was loaded. */
+  private static final class Entry<T> {
+    final T ad;
+    final long loadTimeMillis;
+
+    Entry(T ad, long loadTimeMillis) {
+      this.ad = ad;
+      this.loadTimeMillis = loadTimeMillis;
+    }
+  }
+
+  private final ArrayDeque<Entry<T>> entries;
+  private final int capacity;
+  private final long ttlMillis;
+  private OnEvictedListener onEvictedListener;
+
+  /**
+   * Constructor.
+   *
+   * @param capacity the maximum number of ads held at once
+   * @param ttlMillis how long an ad stays valid after it was loaded
+   */
+  AdPool(int capacity, long ttlMillis) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.entries = new ArrayDeque<>(capacity);
+    this.capacity = capacity;
+    this.ttlMillis = ttlMillis;
+  }
+
+  /** Set the listener to be notified when ads are dropped without being handed out. */
+  synchronized void setOnEvictedListener(OnEvictedListener onEvictedListener) {
+    this.onEvictedListener = onEvictedListener;
+  }
+
+  /**
+   * Add a freshly loaded ad. If the pool is full, the oldest ad is dropped to make room.
+   *
+   * @param ad the loaded ad
+   * @param loadTimeMillis the time the ad was loaded
+   */
+  synchronized void offer(T ad, long loadTimeMillis) {
+    evictExpired(loadTimeMillis);
+    if (entries.size() == capacity) {
+      entries.pollFirst();
+      if (onEvictedListener != null) {
+        onEvictedListener.onReplaced(1);
+      }
+    }
+    entries.addLast(new Entry<>(ad, loadTimeMillis));
+  }
+
+  /** Remove and return the freshest valid ad, or null if there is none. */
+  synchronized T poll(long nowMillis) {
+    evictExpired(nowMillis);
+    Entry<T> entry = entries.pollLast();
+    return entry == null ? null : entry.ad;
+  }
+
+  /** Return the freshest valid ad without removing it, or null if there is none. */
+  synchronized T peek(long nowMillis) {
+    evictExpired(nowMillis);
+    Entry<T> entry = entries.peekLast();
+    return entry == null ? null : entry.ad;
+  }
+
+  /** Check if the pool holds at least one valid ad. */
+  synchronized boolean hasAd(long nowMillis) {
+    evictExpired(nowMillis);
+    return !entries.isEmpty();
+  }
+
+  /** Check if every slot of the pool holds a valid ad. */
+  synchronized boolean isFull(long nowMillis) {
+    evictExpired(nowMillis);
+    return entries.size() == capacity;
+  }
+
+  /** Number of valid ads currently held. */
+  synchronized int size(long nowMillis) {
+    evictExpired(nowMillis);
+    return entries.size();
+  }
+
+  /** Load time of the oldest valid ad, or -1 if the pool is empty. */
+  synchronized long oldestLoadTimeMillis(long nowMillis) {
+    evictExpired(nowMillis);
+    Entry<T> oldest = entries.peekFirst();
+    return oldest == null ? -1 : oldest.loadTimeMillis;
+  }
+
+  /** Drop every pooled ad. */
+  synchronized void clear() {
+    entries.clear();
+  }
+
+  /**
+   * Drop ads that were loaded more than the TTL ago.
+   *
+   * @return the number of evicted ads
+   */
+  synchronized int evictExpired(long nowMillis) {
+    int evicted = 0;
+    Entry<T> oldest;
+    while ((oldest = entries.peekFirst()) != null
+        && nowMillis - oldest.loadTimeMillis >= ttlMillis) {
+      entries.pollFirst();
+      evicted++;
+    }
+    if (evicted > 0 && onEvictedListener != null) {
+      onEvictedListener.onExpired(evicted);
+    }
+    return evicted;
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/** Outcome of waiting for an app open ad with {@link MyApplication#awaitAd}. */
+public final class AdResult {
+
+  /** How the wait ended. */
+  public enum Status {
+    /** An ad is cached and ready to show. */
+    LOADED,
+    /** The load failed, or no load could start, e.g. because consent does not allow ads. */
+    FAILED,
+    /** No ad arrived within the timeout. The load keeps running and caches its ad for later. */
+    TIMED_OUT
+  }
+
+  private final Status status;
+  @Nullable private final ShowableAd ad;
+
+  private AdResult(@NonNull Status status, @Nullable ShowableAd ad) {
+    this.status = status;
+    this.ad = ad;
+  }
+
+  static AdResult loaded(@NonNull ShowableAd ad) {
+    return new AdResult(Status.LOADED, ad);
+  }
+
+  static AdResult failed() {
+    return new AdResult(Status.FAILED, null);
+  }
+
+  static AdResult timedOut() {
+    return new AdResult(Status.TIMED_OUT, null);
+  }
+
+  /** How the wait ended. */
+  @NonNull
+  public Status getStatus() {
+    return status;
+  }
+
+  /**
+   * The ad that is ready, or null unless the status is {@link Status#LOADED}. The ad stays in the
+   * app's cache; {@link MyApplication#showAdIfAvailable} shows the freshest cached ad, which is
+   * this one unless a fresher ad arrived since.
+   */
+  @Nullable
+  public ShowableAd getAd() {
+    return ad;
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free state machine for the app open ad. Every transition is a compare-and-set, so two
+ * threads can never both start showing an ad or both start a load. The ad pool keeps refilling
+ * while an ad is on screen, so whether a load is in flight is tracked next to the state rather
+ * than as a state of its own once an ad is ready. Both live in one immutable snapshot that is
+ * swapped with a single compare-and-set, so they can never be observed out of step.
+ */
+public final class AdStateMachine {
+
+  /** State of the app open ad. */
+  public enum State {
+    /** No ad is cached and none is loading. */
+    IDLE,
+    /** A load is in flight and no ad is cached yet. */
+    LOADING,
+    /** At least one valid ad is cached. */
+    READY,
+    /** An ad is on screen. */
+    SHOWING,
+    /** The cached ad expired before it could be shown. */
+    EXPIRED
+  }
+
+  /** Immutable pair of the state and whether a load is in flight. */
+  private static final class Snapshot {
+    final State state;
+    final boolean isLoading;
+
+    Snapshot(State state, boolean isLoading) {
+      this.state = state;
+      this.isLoading = isLoading;
+    }
+  }
+
+  /** One shared snapshot per combination, so transitions allocate nothing. */
+  private static final Snapshot[] SNAPSHOTS = new Snapshot[State.values().length * 2];
+
+  static {
+    for (State state : State.values()) {
+      SNAPSHOTS[state.ordinal() * 2] = new Snapshot(state, false);
+      SNAPSHOTS[state.ordinal() * 2 + 1] = new Snapshot(state, true);
+    }
+  }
+
+  private final AtomicReference<Snapshot> snapshot =
+      new AtomicReference<>(snapshotOf(State.IDLE, false));
+  private final MutableLiveData<State> observableState = new MutableLiveData<>(State.IDLE);
+
+  /** The current state. */
+  @NonNull
+  public State getState() {
+    return snapshot.get().state;
+  }
+
+  /** Read-only, observable view of the state for the UI. */
+  @NonNull
+  public LiveData<State> getObservableState() {
+    return observableState;
+  }
+
+  /** Check if a load is in flight, including a refill while an ad is ready or showing. */
+  public boolean isLoading() {
+    return snapshot.get().isLoading;
+  }
+
+  /**
+   * Claim the right to start a load.
+   *
+   * @return false if a load is already in flight
+   */
+  boolean tryBeginLoad() {
+    while (true) {
+      Snapshot current = snapshot.get();
+      if (current.isLoading) {
+        return false;
+      }
+      State next = hasNoAd(current.state) ? State.LOADING : current.state;
+      if (compareAndSet(current, next, true)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Finish the in-flight load.
+   *
+   * @param hasAd whether at least one valid ad is cached afterwards
+   */
+  void onLoadFinished(boolean hasAd) {
+    while (true) {
+      Snapshot current = snapshot.get();
+      State next = current.state;
+      if (hasAd && hasNoAd(current.state)) {
+        next = State.READY;
+      } else if (!hasAd && current.state == State.LOADING) {
+        next = State.IDLE;
+      }
+      if (compareAndSet(current, next, false)) {
+        return;
+      }
+    }
+  }
+
+  /** Record that an ad was cached, including one that filled outside of the in-flight load. */
+  void onAdCached() {
+    while (true) {
+      Snapshot current = snapshot.get();
+      if (!hasNoAd(current.state) || compareAndSet(current, State.READY, current.isLoading)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Claim the right to show the cached ad.
+   *
+   * @return false if no ad is ready or one is already showing
+   */
+  boolean tryBeginShow() {
+    while (true) {
+      Snapshot current = snapshot.get();
+      if (current.state != State.READY) {
+        return false;
+      }
+      if (compareAndSet(current, State.SHOWING, current.isLoading)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Finish showing an ad, after it was dismissed or failed to show.
+   *
+   * @param hasAd whether another valid ad is cached
+   */
+  void onShowFinished(boolean hasAd) {
+    leave(State.SHOWING, hasAd ? State.READY : null, State.IDLE);
+  }
+
+  /** Record that every cached ad was released, e.g. to free memory. */
+  void onAdsReleased() {
+    leave(State.READY, null, State.IDLE);
+  }
+
+  /** Record that every cached ad expired before it could be shown. */
+  void onAdsExpired() {
+    leave(State.READY, null, State.EXPIRED);
+  }
+
+  /**
+   * Move out of {@code from}, if that is the current state.
+   *
+   * @param to the next state, or null to go to LOADING while a load is in flight and to {@code
+   *     idle} otherwise
+   * @param idle the next state if {@code to} is null and no load is in flight
+   */
+  private void leave(State from, @Nullable State to, State idle) {
+    while (true) {
+      Snapshot current = snapshot.get();
+      if (current.state != from) {
+        return;
+      }
+      State next = to != null ? to : current.isLoading ? State.LOADING : idle;
+      if (compareAndSet(current, next, current.isLoading)) {
+        return;
+      }
+    }
+  }
+
+  private static boolean hasNoAd(State state) {
+    return state == State.IDLE || state == State.LOADING || state == State.EXPIRED;
+  }
+
+  private static Snapshot snapshotOf(State state, boolean isLoading) {
+    return SNAPSHOTS[state.ordinal() * 2 + (isLoading ? 1 : 0)];
+  }
+
+  private boolean compareAndSet(Snapshot expected, State state, boolean isLoading) {
+    if (!snapshot.compareAndSet(expected, snapshotOf(state, isLoading))) {
+      return false;
+    }
+    if (state != expected.state) {
+      publish(state);
+    }
+    return true;
+  }
+
+  private void publish(State state) {
+    // Transitions happen on the main thread, where setValue delivers every one of them in order.
+    // postValue would coalesce them and could hide a short SHOWING from observers.
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      observableState.setValue(state);
+    } else {
+      observableState.postValue(state);
+    }
+  }
+}
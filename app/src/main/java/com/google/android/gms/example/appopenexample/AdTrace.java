@@ -0,0 +1,120 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.tracing.Trace;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Trace sections and async slices for the startup and ad paths, visible in system traces captured
+ * with Perfetto (including the traces the macrobenchmarks record).
+ *
+ * <p>Each async {@link Slice} also has a duration budget. The app only emits the trace; budgets are
+ * checked by whoever collects the durations, e.g. a test that installs a {@link SliceListener}, so
+ * a slow stage never crashes the app itself.
+ */
+final class AdTrace {
+
+  /** Receives the duration of every async slice that ends. */
+  @VisibleForTesting
+  interface SliceListener {
+
+    /**
+     * Called on the thread that ended the slice.
+     *
+     * @param slice the slice that ended
+     * @param durationMillis the time between the start and the end of the slice
+     */
+    void onSliceEnded(@NonNull Slice slice, long durationMillis);
+  }
+
+  /** Stages traced as async slices, since each one starts and ends in different callbacks. */
+  enum Slice {
+    CONSENT("AppOpen:gatherConsent", 1000),
+    SDK_INIT("AppOpen:MobileAds.initialize", 3000),
+    FIRST_AD_LOAD("AppOpen:firstAdLoad", 1500),
+    AD_LOAD("AppOpen:AppOpenAd.load", 1500),
+    AD_SHOW("AppOpen:AppOpenAd.show", 1000);
+
+    final String sectionName;
+    final long budgetMillis;
+
+    Slice(String sectionName, long budgetMillis) {
+      this.sectionName = sectionName;
+      this.budgetMillis = budgetMillis;
+    }
+  }
+
+  /** Start time of each slice that is in progress, or -1. */
+  private static final AtomicLongArray startTimes = new AtomicLongArray(Slice.values().length);
+
+  static {
+    for (int i = 0; i < startTimes.length(); i++) {
+      startTimes.set(i, -1);
+    }
+  }
+
+  @Nullable private static volatile SliceListener sliceListener;
+
+  private AdTrace() {}
+
+  /** Install the listener that receives slice durations, or remove it with {@code null}. */
+  @VisibleForTesting
+  static void setSliceListener(@Nullable SliceListener listener) {
+    sliceListener = listener;
+  }
+
+  /** Begin a synchronous section; must be ended on the same thread. */
+  static void beginSection(@NonNull String sectionName) {
+    Trace.beginSection(sectionName);
+  }
+
+  /** End the innermost synchronous section of the calling thread. */
+  static void endSection() {
+    Trace.endSection();
+  }
+
+  /** Begin an async slice. Does nothing if the slice is already in progress. */
+  static void beginSlice(@NonNull Slice slice) {
+    if (startTimes.compareAndSet(slice.ordinal(), -1, SystemClock.elapsedRealtime())) {
+      Trace.beginAsyncSection(slice.sectionName, slice.ordinal());
+    }
+  }
+
+  /** End an async slice and report its duration. Does nothing if it is not running. */
+  static void endSlice(@NonNull Slice slice) {
+    long startTime = startTimes.getAndSet(slice.ordinal(), -1);
+    if (startTime < 0) {
+      return;
+    }
+    Trace.endAsyncSection(slice.sectionName, slice.ordinal());
+    SliceListener listener = sliceListener;
+    if (listener != null) {
+      listener.onSliceEnded(slice, SystemClock.elapsedRealtime() - startTime);
+    }
+  }
+
+  /** Drop an async slice that will not complete, e.g. a stage that was skipped. */
+  static void cancelSlice(@NonNull Slice slice) {
+    if (startTimes.getAndSet(slice.ordinal(), -1) >= 0) {
+      Trace.endAsyncSection(slice.sectionName, slice.ordinal());
+    }
+  }
+}
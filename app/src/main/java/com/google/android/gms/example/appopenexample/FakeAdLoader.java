@@ -0,0 +1,198 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.app.Activity;
+import android.content.Context;
+import androidx.annotation.NonNull;
+import com.google.android.gms.ads.AdRequest;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link AdLoader} that serves ads from an in-process fake network with configurable latency, fill
+ * rate and failure codes. It never touches the Google Mobile Ads SDK, so the load/show logic can be
+ * driven offline, from JVM tests or from benchmarks.
+ */
+public final class FakeAdLoader implements AdLoader {
+
+  /** Error code reported when the fake ad fails to show. */
+  public static final int ERROR_CODE_SHOW_FAILED = AdRequest.ERROR_CODE_INTERNAL_ERROR;
+
+  private final Scheduler scheduler;
+  private final long minLatencyMillis;
+  private final long maxLatencyMillis;
+  private final double fillRate;
+  private final int[] failureCodes;
+  private final double showFailureRate;
+  private final long showDurationMillis;
+  private final Random random;
+
+  private final AtomicInteger loadRequests = new AtomicInteger();
+  private final AtomicInteger fills = new AtomicInteger();
+  private final AtomicInteger shows = new AtomicInteger();
+
+  private FakeAdLoader(Builder builder) {
+    this.scheduler = builder.scheduler;
+    this.minLatencyMillis = builder.minLatencyMillis;
+    this.maxLatencyMillis = builder.maxLatencyMillis;
+    this.fillRate = builder.fillRate;
+    this.failureCodes = builder.failureCodes;
+    this.showFailureRate = builder.showFailureRate;
+    this.showDurationMillis = builder.showDurationMillis;
+    this.random = new Random(builder.seed);
+  }
+
+  @Override
+  public void load(
+      @NonNull Context context, @NonNull String adUnitId, @NonNull LoadCallback callback) {
+    loadRequests.incrementAndGet();
+    long latency = minLatencyMillis;
+    if (maxLatencyMillis > minLatencyMillis) {
+      latency += (long) (random.nextDouble() * (maxLatencyMillis - minLatencyMillis));
+    }
+    final boolean filled = random.nextDouble() < fillRate;
+    final int errorCode = failureCodes[random.nextInt(failureCodes.length)];
+    scheduler.schedule(
+        () -> {
+          if (filled) {
+            fills.incrementAndGet();
+            callback.onAdLoaded(new FakeAd(adUnitId));
+          } else {
+            callback.onAdFailedToLoad(errorCode, "Fake network returned error " + errorCode);
+          }
+        },
+        latency);
+  }
+
+  /** Number of load requests received so far. */
+  public int getLoadRequestCount() {
+    return loadRequests.get();
+  }
+
+  /** Number of load requests that were filled so far. */
+  public int getFillCount() {
+    return fills.get();
+  }
+
+  /** Number of show calls received so far. */
+  public int getShowCount() {
+    return shows.get();
+  }
+
+  /** Fake ad that "shows" for a fixed duration and then dismisses itself. */
+  private final class FakeAd implements ShowableAd {
+    private final String adUnitId;
+
+    FakeAd(String adUnitId) {
+      this.adUnitId = adUnitId;
+    }
+
+    @NonNull
+    @Override
+    public String getAdUnitId() {
+      return adUnitId;
+    }
+
+    @Override
+    public void show(@NonNull Activity activity, @NonNull ShowCallback callback) {
+      shows.incrementAndGet();
+      if (random.nextDouble() < showFailureRate) {
+        scheduler.schedule(
+            () -> callback.onAdFailedToShow(ERROR_CODE_SHOW_FAILED, "Fake ad failed to show"), 0);
+        return;
+      }
+      scheduler.schedule(callback::onAdShowed, 0);
+      scheduler.schedule(callback::onAdDismissed, showDurationMillis);
+    }
+  }
+
+  /** Builder for {@link FakeAdLoader}. */
+  public static final class Builder {
+    private final Scheduler scheduler;
+    private long minLatencyMillis = 0;
+    private long maxLatencyMillis = 0;
+    private double fillRate = 1.0;
+    private int[] failureCodes = {AdRequest.ERROR_CODE_NO_FILL};
+    private double showFailureRate = 0.0;
+    private long showDurationMillis = 0;
+    private long seed = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param scheduler the scheduler the fake network delivers its callbacks on
+     */
+    public Builder(@NonNull Scheduler scheduler) {
+      this.scheduler = scheduler;
+    }
+
+    /** Set the load latency, picked uniformly between the two bounds for every request. */
+    public Builder setLatencyMillis(long minLatencyMillis, long maxLatencyMillis) {
+      if (minLatencyMillis < 0 || maxLatencyMillis < minLatencyMillis) {
+        throw new IllegalArgumentException(
+            "Invalid latency range: " + minLatencyMillis + ".." + maxLatencyMillis);
+      }
+      this.minLatencyMillis = minLatencyMillis;
+      this.maxLatencyMillis = maxLatencyMillis;
+      return this;
+    }
+
+    /** Set the fraction of load requests, between 0 and 1, that return an ad. */
+    public Builder setFillRate(double fillRate) {
+      if (fillRate < 0 || fillRate > 1) {
+        throw new IllegalArgumentException("Fill rate must be within [0, 1]: " + fillRate);
+      }
+      this.fillRate = fillRate;
+      return this;
+    }
+
+    /** Set the {@code AdRequest.ERROR_CODE_*} values unfilled requests fail with. */
+    public Builder setFailureCodes(int... failureCodes) {
+      if (failureCodes.length == 0) {
+        throw new IllegalArgumentException("At least one failure code is required");
+      }
+      this.failureCodes = failureCodes.clone();
+      return this;
+    }
+
+    /** Set the fraction of shows, between 0 and 1, that fail to present. */
+    public Builder setShowFailureRate(double showFailureRate) {
+      if (showFailureRate < 0 || showFailureRate > 1) {
+        throw new IllegalArgumentException(
+            "Show failure rate must be within [0, 1]: " + showFailureRate);
+      }
+      this.showFailureRate = showFailureRate;
+      return this;
+    }
+
+    /** Set how long a shown ad stays on screen before it is dismissed. */
+    public Builder setShowDurationMillis(long showDurationMillis) {
+      this.showDurationMillis = showDurationMillis;
+      return this;
+    }
+
+    /** Set the random seed, so runs with the same configuration are reproducible. */
+    public Builder setSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    public FakeAdLoader build() {
+      return new FakeAdLoader(this);
+    }
+  }
+}
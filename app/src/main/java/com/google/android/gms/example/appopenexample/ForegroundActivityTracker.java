@@ -0,0 +1,56 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.app.Activity;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.lang.ref.WeakReference;
+
+/**
+ * Tracks the activity in the foreground through a weak reference, so the ad manager can look it
+ * up at show time without keeping a destroyed activity and its view hierarchy alive.
+ *
+ * <p>All methods must be called on the main thread.
+ */
+final class ForegroundActivityTracker {
+
+  private WeakReference<Activity> foregroundActivity = new WeakReference<>(null);
+
+  /** Record the activity that just came to the foreground. */
+  void setForegroundActivity(@NonNull Activity activity) {
+    if (foregroundActivity.get() != activity) {
+      foregroundActivity = new WeakReference<>(activity);
+    }
+  }
+
+  /** Forget the activity if it is the tracked one, e.g. once it is destroyed. */
+  void clear(@NonNull Activity activity) {
+    if (foregroundActivity.get() == activity) {
+      foregroundActivity.clear();
+    }
+  }
+
+  /** The foreground activity, or null if there is none that can still show an ad. */
+  @Nullable
+  Activity getForegroundActivity() {
+    Activity activity = foregroundActivity.get();
+    if (activity == null || activity.isFinishing() || activity.isDestroyed()) {
+      return null;
+    }
+    return activity;
+  }
+}
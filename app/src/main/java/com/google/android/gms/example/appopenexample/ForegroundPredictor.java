@@ -0,0 +1,346 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.TimeZone;
+
+/**
+ * Lightweight on-device model of when the user brings the app to the foreground. Two small
+ * histograms are kept: foregrounds per local hour of day, and the gaps between sessions in
+ * log-scaled buckets. Together they estimate how likely the user is to return within a window, so
+ * an ad is loaded on the way to the background when a return is likely before it expires, and
+ * skipped when a return is unlikely.
+ *
+ * <p>The histograms are read from a small file on the I/O scheduler after {@link #preload()} and
+ * written back whenever the app moves to the background. Until enough sessions have been seen, the
+ * model is untrained and {@link #isReturnLikely(long, long)} answers {@code true}, which keeps the
+ * plain preloading behavior. Times are wall-clock milliseconds so gaps across process death count.
+ */
+final class ForegroundPredictor {
+
+  private static final String LOG_TAG = "ForegroundPredictor";
+  private static final long MINUTE_MILLIS = 60000L;
+  private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+  private static final int HOURS_PER_DAY = 24;
+
+  /**
+   * Number of gap buckets. Bucket 0 holds gaps under a minute, bucket i holds gaps of
+   * [2^(i-1), 2^i) minutes and the last bucket is open-ended, starting at about 34 hours.
+   */
+  private static final int GAP_BUCKETS = 13;
+
+  /** Number of recorded gaps before the model is trusted. */
+  private static final int MIN_TRAINING_SESSIONS = 10;
+
+  /** Once this many foregrounds are held, every count is halved so recent habits weigh more. */
+  private static final int MAX_HOUR_SAMPLES = 512;
+
+  /** Estimated return probability at or above which a return counts as likely. */
+  private static final float LIKELY_RETURN_PROBABILITY = 0.25f;
+
+  /** Version of the file format, bumped whenever the layout changes. */
+  private static final int FILE_VERSION = 1;
+
+  private final Context context;
+  private final String fileName;
+  private final Scheduler ioScheduler;
+  private final Runnable flushTask = this::flush;
+
+  /**
+   * Time zone the hours are counted in. {@link TimeZone#getDefault()} returns a fresh clone on
+   * every call, so it is read once; a zone change takes effect in the next process.
+   */
+  private final TimeZone timeZone = TimeZone.getDefault();
+
+  private final int[] hourCounts = new int[HOURS_PER_DAY];
+  private final int[] gapCounts = new int[GAP_BUCKETS];
+  private int hourTotal;
+  private int gapTotal;
+
+  /** Time the app last moved to the background, or -1 while it is in the foreground. */
+  private long backgroundSinceMillis = -1;
+
+  /** Time of the first foreground seen before the persisted model was read, or -1. */
+  private long firstForegroundMillis = -1;
+
+  private boolean isLoaded;
+
+  /**
+   * Constructor.
+   *
+   * @param context the context used to resolve the file, only read on the I/O scheduler
+   * @param fileName the name of the file in the app's files directory
+   * @param ioScheduler the scheduler that runs disk reads and writes off the main thread
+   */
+  ForegroundPredictor(
+      @NonNull Context context, @NonNull String fileName, @NonNull Scheduler ioScheduler) {
+    this.context = context;
+    this.fileName = fileName;
+    this.ioScheduler = ioScheduler;
+  }
+
+  /** Start reading the persisted model on the I/O scheduler. */
+  void preload() {
+    ioScheduler.schedule(this::load, 0);
+  }
+
+  /** Record that the app came to the foreground. */
+  synchronized void onForeground(long nowMillis) {
+    if (!isLoaded && firstForegroundMillis < 0) {
+      // The gap since the last session is only known once the file was read.
+      firstForegroundMillis = nowMillis;
+    }
+    if (backgroundSinceMillis >= 0 && nowMillis >= backgroundSinceMillis) {
+      recordGap(nowMillis - backgroundSinceMillis);
+    }
+    backgroundSinceMillis = -1;
+    recordHour(nowMillis);
+  }
+
+  /** Record that the app moved to the background and write the model. */
+  synchronized void onBackground(long nowMillis) {
+    backgroundSinceMillis = nowMillis;
+    if (isLoaded) {
+      ioScheduler.schedule(flushTask, 0);
+    }
+  }
+
+  /** Check if enough sessions were seen for predictions to mean anything. */
+  synchronized boolean isTrained() {
+    return isLoaded && gapTotal >= MIN_TRAINING_SESSIONS;
+  }
+
+  /**
+   * Check if the user is likely to return within the window. Always true while the app is in the
+   * foreground or the model is untrained.
+   *
+   * @param nowMillis the current wall-clock time
+   * @param windowMillis the length of the window starting now
+   */
+  synchronized boolean isReturnLikely(long nowMillis, long windowMillis) {
+    if (backgroundSinceMillis < 0 || !isTrained()) {
+      return true;
+    }
+    return returnProbability(nowMillis, windowMillis) >= LIKELY_RETURN_PROBABILITY;
+  }
+
+  /**
+   * Time from now until a return within the window becomes likely, stepping forward one window
+   * at a time, so a load can be scheduled just ahead of the user's predicted return. Returns 0
+   * while the app is in the foreground or the model is untrained.
+   *
+   * @param nowMillis the current wall-clock time
+   * @param windowMillis the length of the window a return is checked for
+   * @param horizonMillis how far ahead to look
+   * @return the delay in milliseconds, or -1 if no return looks likely within the horizon
+   */
+  synchronized long millisUntilLikelyReturn(
+      long nowMillis, long windowMillis, long horizonMillis) {
+    if (backgroundSinceMillis < 0 || !isTrained()) {
+      return 0;
+    }
+    for (long offset = 0; offset <= horizonMillis; offset += windowMillis) {
+      if (returnProbability(nowMillis + offset, windowMillis) >= LIKELY_RETURN_PROBABILITY) {
+        return offset;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Estimated probability that the user returns within the window, given how long the app has
+   * been in the background so far. The gap histogram gives the chance that the current gap ends
+   * within the window; the hour histogram scales it by how popular the window's hours are.
+   */
+  private float returnProbability(long nowMillis, long windowMillis) {
+    long elapsed = Math.max(0, nowMillis - backgroundSinceMillis);
+    float before = gapsShorterThan(elapsed);
+    float remaining = gapTotal - before;
+    if (remaining <= 0) {
+      return 0;
+    }
+    float gapProbability = (gapsShorterThan(elapsed + windowMillis) - before) / remaining;
+
+    // Average the smoothed share of foregrounds over the hours the window covers, relative to an
+    // even spread over the day.
+    long windowEndMillis = nowMillis + Math.max(0, windowMillis - 1);
+    long windowHours = windowEndMillis / HOUR_MILLIS - nowMillis / HOUR_MILLIS + 1;
+    int hours = (int) Math.min(HOURS_PER_DAY, windowHours);
+    int firstHour = hourOfDay(nowMillis);
+    int windowCount = 0;
+    for (int i = 0; i < hours; i++) {
+      windowCount += hourCounts[(firstHour + i) % HOURS_PER_DAY];
+    }
+    float windowShare = (float) (windowCount + hours) / (hourTotal + HOURS_PER_DAY);
+    float hourFactor = windowShare * HOURS_PER_DAY / hours;
+    return Math.min(1f, gapProbability * hourFactor);
+  }
+
+  /** Estimated number of recorded gaps shorter than the given one, interpolated within buckets. */
+  private float gapsShorterThan(long gapMillis) {
+    int bucket = gapBucket(gapMillis);
+    float count = 0;
+    for (int i = 0; i < bucket; i++) {
+      count += gapCounts[i];
+    }
+    if (bucket < GAP_BUCKETS - 1) {
+      long start = bucketStartMillis(bucket);
+      long width = bucketStartMillis(bucket + 1) - start;
+      count += gapCounts[bucket] * (float) (gapMillis - start) / width;
+    }
+    return count;
+  }
+
+  private void recordGap(long gapMillis) {
+    gapCounts[gapBucket(gapMillis)]++;
+    gapTotal++;
+  }
+
+  private void recordHour(long timeMillis) {
+    hourCounts[hourOfDay(timeMillis)]++;
+    hourTotal++;
+    if (hourTotal >= MAX_HOUR_SAMPLES) {
+      hourTotal = halve(hourCounts);
+      gapTotal = halve(gapCounts);
+    }
+  }
+
+  private static int halve(int[] counts) {
+    int total = 0;
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] >>= 1;
+      total += counts[i];
+    }
+    return total;
+  }
+
+  private static int gapBucket(long gapMillis) {
+    long minutes = gapMillis / MINUTE_MILLIS;
+    if (minutes <= 0) {
+      return 0;
+    }
+    return Math.min(GAP_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(minutes));
+  }
+
+  private static long bucketStartMillis(int bucket) {
+    return bucket == 0 ? 0 : (1L << (bucket - 1)) * MINUTE_MILLIS;
+  }
+
+  private int hourOfDay(long timeMillis) {
+    long localMillis = timeMillis + timeZone.getOffset(timeMillis);
+    return (int) (((localMillis / HOUR_MILLIS) % HOURS_PER_DAY + HOURS_PER_DAY) % HOURS_PER_DAY);
+  }
+
+  private void load() {
+    int[] hours = new int[HOURS_PER_DAY];
+    int[] gaps = new int[GAP_BUCKETS];
+    long persistedBackgroundSince = -1;
+    AtomicFile file = new AtomicFile(new File(context.getFilesDir(), fileName));
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(file.openRead()))) {
+      if (in.readInt() == FILE_VERSION) {
+        persistedBackgroundSince = in.readLong();
+        for (int i = 0; i < hours.length; i++) {
+          hours[i] = Math.max(0, in.readInt());
+        }
+        for (int i = 0; i < gaps.length; i++) {
+          gaps[i] = Math.max(0, in.readInt());
+        }
+      }
+    } catch (FileNotFoundException e) {
+      // No sessions recorded yet.
+    } catch (IOException e) {
+      Log.w(LOG_TAG, "Failed to read the foreground model, starting empty.", e);
+      hours = new int[HOURS_PER_DAY];
+      gaps = new int[GAP_BUCKETS];
+      persistedBackgroundSince = -1;
+    }
+
+    synchronized (this) {
+      boolean isRecordedBeforeLoad = firstForegroundMillis >= 0;
+      // Sessions recorded before the load finished add to the persisted ones.
+      for (int i = 0; i < hours.length; i++) {
+        hourCounts[i] += hours[i];
+        hourTotal += hours[i];
+      }
+      for (int i = 0; i < gaps.length; i++) {
+        gapCounts[i] += gaps[i];
+        gapTotal += gaps[i];
+      }
+      // A cold start ends the gap that began when the previous process went to the background.
+      if (isRecordedBeforeLoad
+          && persistedBackgroundSince >= 0
+          && firstForegroundMillis >= persistedBackgroundSince) {
+        recordGap(firstForegroundMillis - persistedBackgroundSince);
+      } else if (!isRecordedBeforeLoad) {
+        // Not in the foreground yet, so the previous gap is still running.
+        backgroundSinceMillis = persistedBackgroundSince;
+      }
+      firstForegroundMillis = -1;
+      isLoaded = true;
+      if (isRecordedBeforeLoad) {
+        ioScheduler.schedule(flushTask, 0);
+      }
+    }
+  }
+
+  private void flush() {
+    int[] hours;
+    int[] gaps;
+    long backgroundSince;
+    synchronized (this) {
+      if (!isLoaded) {
+        return;
+      }
+      hours = hourCounts.clone();
+      gaps = gapCounts.clone();
+      backgroundSince = backgroundSinceMillis;
+    }
+
+    AtomicFile file = new AtomicFile(new File(context.getFilesDir(), fileName));
+    FileOutputStream stream = null;
+    try {
+      stream = file.startWrite();
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+      out.writeInt(FILE_VERSION);
+      out.writeLong(backgroundSince);
+      for (int count : hours) {
+        out.writeInt(count);
+      }
+      for (int count : gaps) {
+        out.writeInt(count);
+      }
+      out.flush();
+      file.finishWrite(stream);
+    } catch (IOException e) {
+      Log.w(LOG_TAG, "Failed to write the foreground model.", e);
+      if (stream != null) {
+        file.failWrite(stream);
+      }
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.app.Activity;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import androidx.annotation.NonNull;
+import java.lang.ref.WeakReference;
+
+/**
+ * Schedules the app open ad show that follows a foreground event. Repeated foreground events are
+ * coalesced into a single pending attempt, moving to the background cancels it, and the attempt
+ * runs as soon as the foreground activity has drawn its first frame rather than after a fixed
+ * delay. The same task and draw listener are reused for every attempt.
+ *
+ * <p>All methods must be called on the main thread.
+ */
+final class ForegroundShowScheduler {
+
+  /**
+   * Upper bound on how long an attempt waits for the first frame, in case the draw is never
+   * observed (e.g. the activity was already drawn before it was tracked).
+   */
+  private static final long MAX_FIRST_FRAME_WAIT_MILLIS = 500;
+
+  private final Scheduler scheduler;
+  private final Runnable showAction;
+  private final Runnable showTask = this::runShow;
+  private final Runnable removeDrawListenerTask = this::removeDrawListener;
+  private final ViewTreeObserver.OnDrawListener drawListener = this::onFirstFrameDrawn;
+
+  private Scheduler.Cancellable pendingShow;
+  private boolean isAwaitingFirstFrame;
+  private boolean isFirstFrameDrawn;
+  private WeakReference<View> watchedDecorView = new WeakReference<>(null);
+
+  /**
+   * Constructor.
+   *
+   * @param scheduler the main thread scheduler
+   * @param showAction the action that shows the ad in the current foreground activity
+   */
+  ForegroundShowScheduler(@NonNull Scheduler scheduler, @NonNull Runnable showAction) {
+    this.scheduler = scheduler;
+    this.showAction = showAction;
+  }
+
+  /** Track the first frame of the activity that is about to be in the foreground. */
+  void watchFirstFrame(@NonNull Activity activity) {
+    removeDrawListener();
+    isFirstFrameDrawn = false;
+    View decorView = activity.getWindow().getDecorView();
+    decorView.getViewTreeObserver().addOnDrawListener(drawListener);
+    watchedDecorView = new WeakReference<>(decorView);
+  }
+
+  /** Request a show attempt; coalesced with any attempt that is already pending. */
+  void onForeground() {
+    if (pendingShow != null || isAwaitingFirstFrame) {
+      return;
+    }
+    if (isFirstFrameDrawn) {
+      pendingShow = scheduler.schedule(showTask, 0);
+    } else {
+      // Run as soon as the first frame is drawn, or after the cap if it never is.
+      isAwaitingFirstFrame = true;
+      pendingShow = scheduler.schedule(showTask, MAX_FIRST_FRAME_WAIT_MILLIS);
+    }
+  }
+
+  /** Cancel any pending show attempt. */
+  void onBackground() {
+    cancelPendingShow();
+    isAwaitingFirstFrame = false;
+  }
+
+  private void onFirstFrameDrawn() {
+    isFirstFrameDrawn = true;
+    // Observers cannot be removed while the tree is dispatching onDraw.
+    scheduler.schedule(removeDrawListenerTask, 0);
+    if (isAwaitingFirstFrame) {
+      isAwaitingFirstFrame = false;
+      cancelPendingShow();
+      // Never start the ad activity from inside a draw pass.
+      pendingShow = scheduler.schedule(showTask, 0);
+    }
+  }
+
+  private void runShow() {
+    pendingShow = null;
+    isAwaitingFirstFrame = false;
+    showAction.run();
+  }
+
+  private void cancelPendingShow() {
+    if (pendingShow != null) {
+      pendingShow.cancel();
+      pendingShow = null;
+    }
+  }
+
+  private void removeDrawListener() {
+    View decorView = watchedDecorView.get();
+    if (decorView == null) {
+      return;
+    }
+    ViewTreeObserver observer = decorView.getViewTreeObserver();
+    if (observer.isAlive()) {
+      observer.removeOnDrawListener(drawListener);
+    }
+    watchedDecorView.clear();
+  }
+}
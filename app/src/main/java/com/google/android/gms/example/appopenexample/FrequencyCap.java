@@ -0,0 +1,236 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Persisted frequency cap for app open ad impressions. Recent impression times are kept in a
+ * fixed ring that holds exactly as many entries as the daily cap, so every check compares a single
+ * entry per rule and runs in constant time without touching the disk.
+ *
+ * <p>The ring is read from a small file on the I/O scheduler after {@link #preload()}; until then
+ * {@link #canShow(long)} answers {@code false}. New impressions are written back in batches on the
+ * I/O scheduler. Times are wall-clock milliseconds so the cap survives process death and reboots.
+ */
+final class FrequencyCap {
+
+  private static final String LOG_TAG = "FrequencyCap";
+  private static final long HOUR_MILLIS = 3600000L;
+  private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+  /** How long new impressions are batched before they are written to disk. */
+  private static final long FLUSH_DELAY_MILLIS = 5000;
+
+  private final Context context;
+  private final String fileName;
+  private final Scheduler ioScheduler;
+  private final int maxPerHour;
+  private final int maxPerDay;
+  private final long minIntervalMillis;
+  private final Runnable flushTask = this::flush;
+
+  /** Impression times in chronological order, starting at {@code (head - count)}. */
+  private final long[] impressions;
+
+  private int head;
+  private int count;
+  private boolean isLoaded;
+  private boolean isDirty;
+  private boolean isFlushScheduled;
+
+  /**
+   * Constructor.
+   *
+   * @param context the context used to resolve the file, only read on the I/O scheduler
+   * @param fileName the name of the file in the app's files directory
+   * @param ioScheduler the scheduler that runs disk reads and writes off the main thread
+   * @param maxPerHour the maximum number of impressions in any rolling hour
+   * @param maxPerDay the maximum number of impressions in any rolling day
+   * @param minIntervalMillis the minimum time between two impressions
+   */
+  FrequencyCap(
+      @NonNull Context context,
+      @NonNull String fileName,
+      @NonNull Scheduler ioScheduler,
+      int maxPerHour,
+      int maxPerDay,
+      long minIntervalMillis) {
+    if (maxPerHour <= 0 || maxPerDay < maxPerHour) {
+      throw new IllegalArgumentException(
+          "Invalid caps: maxPerHour=" + maxPerHour + ", maxPerDay=" + maxPerDay);
+    }
+    this.context = context;
+    this.fileName = fileName;
+    this.ioScheduler = ioScheduler;
+    this.maxPerHour = maxPerHour;
+    this.maxPerDay = maxPerDay;
+    this.minIntervalMillis = minIntervalMillis;
+    this.impressions = new long[maxPerDay];
+  }
+
+  /** Start reading the persisted impressions on the I/O scheduler. */
+  void preload() {
+    ioScheduler.schedule(this::load, 0);
+  }
+
+  /** Check if an ad may be shown now. Never blocks on disk. */
+  synchronized boolean canShow(long nowMillis) {
+    if (!isLoaded) {
+      return false;
+    }
+    // The clock can also move back while the process runs. Times in the future are the most
+    // recent entries, and would otherwise block every show until the clock caught up.
+    while (count > 0 && recent(1) > nowMillis) {
+      head = (head - 1 + impressions.length) % impressions.length;
+      count--;
+      isDirty = true;
+    }
+    if (count > 0 && nowMillis - recent(1) < minIntervalMillis) {
+      return false;
+    }
+    if (count >= maxPerHour && nowMillis - recent(maxPerHour) < HOUR_MILLIS) {
+      return false;
+    }
+    return count < maxPerDay || nowMillis - recent(maxPerDay) >= DAY_MILLIS;
+  }
+
+  /** Record an impression and schedule it to be written with any others that follow shortly. */
+  synchronized void recordImpression(long nowMillis) {
+    append(nowMillis);
+    isDirty = true;
+    if (!isFlushScheduled) {
+      isFlushScheduled = true;
+      ioScheduler.schedule(flushTask, FLUSH_DELAY_MILLIS);
+    }
+  }
+
+  /** Write pending impressions now, e.g. when the app moves to the background. */
+  synchronized void flushSoon() {
+    if (isDirty) {
+      isFlushScheduled = true;
+      ioScheduler.schedule(flushTask, 0);
+    }
+  }
+
+  /** The n-th most recent impression time, 1 being the latest. */
+  private long recent(int n) {
+    return impressions[(head - n + impressions.length) % impressions.length];
+  }
+
+  private void append(long timeMillis) {
+    impressions[head] = timeMillis;
+    head = (head + 1) % impressions.length;
+    count = Math.min(count + 1, impressions.length);
+  }
+
+  /** Copy of the held impressions in chronological order. */
+  private long[] chronological() {
+    long[] copy = new long[count];
+    for (int i = 0; i < count; i++) {
+      copy[i] = recent(count - i);
+    }
+    return copy;
+  }
+
+  private void load() {
+    long[] persisted = new long[0];
+    AtomicFile file = new AtomicFile(new File(context.getFilesDir(), fileName));
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(file.openRead()))) {
+      int size = in.readInt();
+      persisted = new long[Math.min(Math.max(size, 0), impressions.length)];
+      // Keep only the most recent entries if the daily cap was lowered since the last write.
+      for (int i = 0; i < size; i++) {
+        long timeMillis = in.readLong();
+        int index = i - (size - persisted.length);
+        if (index >= 0) {
+          persisted[index] = timeMillis;
+        }
+      }
+    } catch (FileNotFoundException e) {
+      // No impressions recorded yet.
+    } catch (IOException e) {
+      Log.w(LOG_TAG, "Failed to read impressions, starting empty.", e);
+      persisted = new long[0];
+    }
+
+    long nowMillis = System.currentTimeMillis();
+    synchronized (this) {
+      // Impressions recorded before the load finished are newer than the persisted ones.
+      long[] recorded = chronological();
+      head = 0;
+      count = 0;
+      for (long timeMillis : persisted) {
+        // Drop times in the future, left behind if the device clock was moved back.
+        if (timeMillis <= nowMillis) {
+          append(timeMillis);
+        }
+      }
+      for (long timeMillis : recorded) {
+        append(timeMillis);
+      }
+      isLoaded = true;
+      if (isDirty && !isFlushScheduled) {
+        isFlushScheduled = true;
+        ioScheduler.schedule(flushTask, FLUSH_DELAY_MILLIS);
+      }
+    }
+  }
+
+  private void flush() {
+    long[] snapshot;
+    synchronized (this) {
+      isFlushScheduled = false;
+      if (!isDirty || !isLoaded) {
+        return;
+      }
+      isDirty = false;
+      snapshot = chronological();
+    }
+
+    AtomicFile file = new AtomicFile(new File(context.getFilesDir(), fileName));
+    FileOutputStream stream = null;
+    try {
+      stream = file.startWrite();
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+      out.writeInt(snapshot.length);
+      for (long timeMillis : snapshot) {
+        out.writeLong(timeMillis);
+      }
+      out.flush();
+      file.finishWrite(stream);
+    } catch (IOException e) {
+      Log.w(LOG_TAG, "Failed to write impressions.", e);
+      if (stream != null) {
+        file.failWrite(stream);
+      }
+      synchronized (this) {
+        isDirty = true;
+      }
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.app.Activity;
+import android.content.Context;
+import androidx.annotation.NonNull;
+import com.google.android.gms.ads.AdError;
+import com.google.android.gms.ads.AdRequest;
+import com.google.android.gms.ads.FullScreenContentCallback;
+import com.google.android.gms.ads.LoadAdError;
+import com.google.android.gms.ads.appopen.AppOpenAd;
+import com.google.android.gms.ads.appopen.AppOpenAd.AppOpenAdLoadCallback;
+
+/** {@link AdLoader} that loads app open ads through the Google Mobile Ads SDK. */
+public final class GmsAdLoader implements AdLoader {
+
+  @Override
+  public void load(
+      @NonNull Context context, @NonNull String adUnitId, @NonNull LoadCallback callback) {
+    AdRequest request = new AdRequest.Builder().build();
+    AppOpenAd.load(
+        context,
+        adUnitId,
+        request,
+        new AppOpenAdLoadCallback() {
+          @Override
+          public void onAdLoaded(@NonNull AppOpenAd ad) {
+            callback.onAdLoaded(new GmsShowableAd(ad, adUnitId));
+          }
+
+          @Override
+          public void onAdFailedToLoad(@NonNull LoadAdError loadAdError) {
+            callback.onAdFailedToLoad(loadAdError.getCode(), loadAdError.getMessage());
+          }
+        });
+  }
+
+  /** {@link ShowableAd} backed by an {@link AppOpenAd}. */
+  private static final class GmsShowableAd implements ShowableAd {
+    private final AppOpenAd appOpenAd;
+    private final String adUnitId;
+
+    GmsShowableAd(AppOpenAd appOpenAd, String adUnitId) {
+      this.appOpenAd = appOpenAd;
+      this.adUnitId = adUnitId;
+    }
+
+    @NonNull
+    @Override
+    public String getAdUnitId() {
+      return adUnitId;
+    }
+
+    @Override
+    public void show(@NonNull Activity activity, @NonNull ShowCallback callback) {
+      appOpenAd.setFullScreenContentCallback(
+          new FullScreenContentCallback() {
+            @Override
+            public void onAdDismissedFullScreenContent() {
+              // Drop the callback so the SDK no longer retains what it captured.
+              appOpenAd.setFullScreenContentCallback(null);
+              callback.onAdDismissed();
+            }
+
+            @Override
+            public void onAdFailedToShowFullScreenContent(@NonNull AdError adError) {
+              appOpenAd.setFullScreenContentCallback(null);
+              callback.onAdFailedToShow(adError.getCode(), adError.getMessage());
+            }
+
+            @Override
+            public void onAdShowedFullScreenContent() {
+              callback.onAdShowed();
+            }
+          });
+      appOpenAd.show(activity);
+    }
+  }
+}
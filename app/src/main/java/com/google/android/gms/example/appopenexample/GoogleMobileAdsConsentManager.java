@@ -2,6 +2,7 @@ package com.google.android.gms.example.appopenexample;
 
 import android.app.Activity;
 import android.content.Context;
+import android.content.SharedPreferences;
 import com.google.android.ump.ConsentDebugSettings;
 import com.google.android.ump.ConsentForm.OnConsentFormDismissedListener;
 import com.google.android.ump.ConsentInformation;
@@ -16,12 +17,45 @@ import com.google.android.ump.UserMessagingPlatform;
  * This is an example and you can choose another consent management platform to capture consent.
  */
 public final class GoogleMobileAdsConsentManager {
+  private static final String PREFS_NAME = "consent_snapshot";
+  private static final String KEY_CAN_REQUEST_ADS = "can_request_ads";
+  private static final String KEY_PRIVACY_OPTIONS_REQUIRED = "privacy_options_required";
+  private static final String KEY_UPDATED_AT = "updated_at";
+
+  /** Default time a gathered consent snapshot is trusted before the UMP SDK is asked again. */
+  private static final long DEFAULT_CONSENT_TTL_MILLIS = 24 * 3600000L;
+
+  /**
+   * Share of the TTL after which a fresh snapshot is also refreshed in the background, so it is
+   * renewed before it expires without calling the UMP SDK on every launch.
+   */
+  private static final int BACKGROUND_REFRESH_DIVISOR = 2;
+
   private static GoogleMobileAdsConsentManager instance;
   private final ConsentInformation consentInformation;
+  private final SharedPreferences preferences;
+
+  /**
+   * In-memory consent snapshot, seeded from the persisted one so {@link #canRequestAds()} answers
+   * immediately at process start without calling into the UMP SDK.
+   */
+  private volatile boolean isSnapshotValid;
+  private volatile boolean canRequestAds;
+  private volatile boolean isPrivacyOptionsRequired;
+  private volatile long snapshotUpdatedAt;
+  private volatile long consentTtlMillis = DEFAULT_CONSENT_TTL_MILLIS;
+  private volatile boolean isConsentAssumed;
 
   /** Private constructor */
   private GoogleMobileAdsConsentManager(Context context) {
     this.consentInformation = UserMessagingPlatform.getConsentInformation(context);
+    this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    if (preferences.contains(KEY_UPDATED_AT)) {
+      canRequestAds = preferences.getBoolean(KEY_CAN_REQUEST_ADS, false);
+      isPrivacyOptionsRequired = preferences.getBoolean(KEY_PRIVACY_OPTIONS_REQUIRED, false);
+      snapshotUpdatedAt = preferences.getLong(KEY_UPDATED_AT, 0);
+      isSnapshotValid = true;
+    }
   }
 
   /** Public constructor */
@@ -40,21 +74,130 @@ public final class GoogleMobileAdsConsentManager {
 
   /** Helper variable to determine if the app can request ads. */
   public boolean canRequestAds() {
-    return consentInformation.canRequestAds();
+    if (!isSnapshotValid) {
+      refreshSnapshot();
+    }
+    return canRequestAds;
   }
 
   /** Helper variable to determine if the privacy options form is required. */
   public boolean isPrivacyOptionsRequired() {
-    return consentInformation.getPrivacyOptionsRequirementStatus()
-        == PrivacyOptionsRequirementStatus.REQUIRED;
+    if (!isSnapshotValid) {
+      refreshSnapshot();
+    }
+    return isPrivacyOptionsRequired;
+  }
+
+  /**
+   * Set how long a gathered consent snapshot is trusted before launches wait for the UMP SDK
+   * again. A shorter TTL picks up consent changes sooner at the cost of more launches that block
+   * on the consent request.
+   *
+   * @param consentTtlMillis the time to live in milliseconds, must be positive
+   */
+  public void setConsentTtlMillis(long consentTtlMillis) {
+    if (consentTtlMillis <= 0) {
+      throw new IllegalArgumentException("consentTtlMillis must be positive: " + consentTtlMillis);
+    }
+    this.consentTtlMillis = consentTtlMillis;
+  }
+
+  /**
+   * Treat ads as allowed for the rest of the process without asking the UMP SDK. Only meant for
+   * offline benchmark builds that serve ads from {@link FakeAdLoader}.
+   */
+  void assumeConsentForOfflineTesting() {
+    canRequestAds = true;
+    isPrivacyOptionsRequired = false;
+    snapshotUpdatedAt = System.currentTimeMillis();
+    isConsentAssumed = true;
+    isSnapshotValid = true;
+  }
+
+  /** Drop the in-memory snapshot so the next check reads the UMP SDK again. */
+  public void invalidateSnapshot() {
+    isSnapshotValid = false;
+  }
+
+  /** Read the current consent state from the UMP SDK and persist it asynchronously. */
+  private void refreshSnapshot() {
+    canRequestAds = consentInformation.canRequestAds();
+    isPrivacyOptionsRequired =
+        consentInformation.getPrivacyOptionsRequirementStatus()
+            == PrivacyOptionsRequirementStatus.REQUIRED;
+    snapshotUpdatedAt = System.currentTimeMillis();
+    isSnapshotValid = true;
+    preferences
+        .edit()
+        .putBoolean(KEY_CAN_REQUEST_ADS, canRequestAds)
+        .putBoolean(KEY_PRIVACY_OPTIONS_REQUIRED, isPrivacyOptionsRequired)
+        .putLong(KEY_UPDATED_AT, snapshotUpdatedAt)
+        .apply();
+  }
+
+  /** Check if the snapshot allows ads and was gathered less than the TTL ago. */
+  private boolean isSnapshotFresh() {
+    if (isConsentAssumed) {
+      return true;
+    }
+    long age = snapshotAgeMillis();
+    return isSnapshotValid && canRequestAds && age >= 0 && age < consentTtlMillis;
+  }
+
+  /** Check if a fresh snapshot is old enough to be refreshed in the background. */
+  private boolean isSnapshotDueForRefresh() {
+    return !isConsentAssumed
+        && snapshotAgeMillis() >= consentTtlMillis / BACKGROUND_REFRESH_DIVISOR;
+  }
+
+  private long snapshotAgeMillis() {
+    return System.currentTimeMillis() - snapshotUpdatedAt;
   }
 
   /**
    * Helper method to call the UMP SDK methods to request consent information and load/present a
-   * consent form if necessary.
+   * consent form if necessary. A fresh snapshot that already allows ads completes immediately.
+   * Once it is past half its TTL, the consent information is also updated in the background, so
+   * the UMP SDK is asked at most about twice per TTL instead of on every launch.
    */
   public void gatherConsent(
       Activity activity, OnConsentGatheringCompleteListener onConsentGatheringCompleteListener) {
+    if (isSnapshotFresh()) {
+      onConsentGatheringCompleteListener.consentGatheringComplete(null);
+      if (isSnapshotDueForRefresh()) {
+        // Off the startup path: a change, e.g. consent that now has to be asked again, updates the
+        // snapshot, and the next launch shows the form instead of taking this fast path.
+        consentInformation.requestConsentInfoUpdate(
+            activity,
+            buildRequestParameters(activity),
+            this::refreshSnapshot,
+            requestConsentError -> {
+              // Keep the current snapshot; the next launch tries the update again.
+            });
+      }
+      return;
+    }
+
+    // Requesting an update to consent information should be called on every app launch.
+    consentInformation.requestConsentInfoUpdate(
+        activity,
+        buildRequestParameters(activity),
+        () ->
+                // Consent has been gathered.
+                UserMessagingPlatform.loadAndShowConsentFormIfRequired(
+                activity,
+                        formError -> {
+                          refreshSnapshot();
+                          onConsentGatheringCompleteListener.consentGatheringComplete(formError);
+                        }),
+            requestConsentError -> {
+              refreshSnapshot();
+              onConsentGatheringCompleteListener.consentGatheringComplete(requestConsentError);
+            }
+    );
+  }
+
+  private static ConsentRequestParameters buildRequestParameters(Activity activity) {
     // For testing purposes, you can force a DebugGeography of EEA or NOT_EEA.
     ConsentDebugSettings debugSettings = new ConsentDebugSettings.Builder(activity)
          .setDebugGeography(ConsentDebugSettings.DebugGeography.DEBUG_GEOGRAPHY_EEA)
@@ -64,27 +207,21 @@ public final class GoogleMobileAdsConsentManager {
         .addTestDeviceHashedId("972768A90C4BE70E79F91E8BD7874668")//"333337C74818DB276557339F138248D8")
         .build();
 
-    ConsentRequestParameters params = new ConsentRequestParameters.Builder()
+    return new ConsentRequestParameters.Builder()
         .setConsentDebugSettings(debugSettings)
         .build();
-
-    // Requesting an update to consent information should be called on every app launch.
-    consentInformation.requestConsentInfoUpdate(
-        activity,
-        params,
-        () ->
-                // Consent has been gathered.
-                UserMessagingPlatform.loadAndShowConsentFormIfRequired(
-                activity,
-                        onConsentGatheringCompleteListener::consentGatheringComplete),
-            onConsentGatheringCompleteListener::consentGatheringComplete
-    );
   }
 
   /** Helper method to call the UMP SDK method to present the privacy options form. */
   public void showPrivacyOptionsForm(
       Activity activity,
       OnConsentFormDismissedListener onConsentFormDismissedListener) {
-    UserMessagingPlatform.showPrivacyOptionsForm(activity, onConsentFormDismissedListener);
+    UserMessagingPlatform.showPrivacyOptionsForm(
+        activity,
+        formError -> {
+          // The user may have changed their choices, so the snapshot can no longer be trusted.
+          invalidateSnapshot();
+          onConsentFormDismissedListener.onConsentFormDismissed(formError);
+        });
   }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import androidx.annotation.NonNull;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with fixed bucket bounds. Recording is lock-free and does not allocate, so it
+ * is safe to call from ad callbacks on the main thread.
+ */
+public final class LatencyHistogram {
+
+  /** Upper bounds of the buckets in milliseconds; a final overflow bucket catches the rest. */
+  private static final long[] BUCKET_BOUNDS_MILLIS = {
+    10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000
+  };
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong sumMillis = new AtomicLong();
+  private final AtomicLong maxMillis = new AtomicLong();
+
+  /** Record one latency sample. */
+  public void record(long latencyMillis) {
+    if (latencyMillis < 0) {
+      return;
+    }
+    int bucket = 0;
+    while (bucket < BUCKET_BOUNDS_MILLIS.length && latencyMillis > BUCKET_BOUNDS_MILLIS[bucket]) {
+      bucket++;
+    }
+    counts.incrementAndGet(bucket);
+    total.incrementAndGet();
+    sumMillis.addAndGet(latencyMillis);
+    long max;
+    while (latencyMillis > (max = maxMillis.get())) {
+      if (maxMillis.compareAndSet(max, latencyMillis)) {
+        break;
+      }
+    }
+  }
+
+  /** Take an immutable snapshot of the histogram. */
+  @NonNull
+  public Snapshot snapshot() {
+    long[] bucketCounts = new long[counts.length()];
+    for (int i = 0; i < bucketCounts.length; i++) {
+      bucketCounts[i] = counts.get(i);
+    }
+    return new Snapshot(bucketCounts, total.get(), sumMillis.get(), maxMillis.get());
+  }
+
+  /** Immutable view of a {@link LatencyHistogram} at one point in time. */
+  public static final class Snapshot {
+    private final long[] bucketCounts;
+    private final long count;
+    private final long sumMillis;
+    private final long maxMillis;
+
+    Snapshot(long[] bucketCounts, long count, long sumMillis, long maxMillis) {
+      this.bucketCounts = bucketCounts;
+      this.count = count;
+      this.sumMillis = sumMillis;
+      this.maxMillis = maxMillis;
+    }
+
+    /** Number of recorded samples. */
+    public long getCount() {
+      return count;
+    }
+
+    /** Mean latency in milliseconds, or 0 if nothing was recorded. */
+    public long getMeanMillis() {
+      return count == 0 ? 0 : sumMillis / count;
+    }
+
+    /** Largest recorded latency in milliseconds. */
+    public long getMaxMillis() {
+      return maxMillis;
+    }
+
+    /**
+     * Upper bound of the bucket that holds the given percentile, but never more than the largest
+     * recorded latency. Samples in the overflow bucket report the largest recorded latency.
+     *
+     * @param percentile the percentile, between 0 and 100
+     */
+    public long getPercentileMillis(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(percentile / 100 * count);
+      long seen = 0;
+      for (int i = 0; i < bucketCounts.length; i++) {
+        seen += bucketCounts[i];
+        if (seen >= rank && bucketCounts[i] > 0) {
+          return i < BUCKET_BOUNDS_MILLIS.length
+              ? Math.min(BUCKET_BOUNDS_MILLIS[i], maxMillis)
+              : maxMillis;
+        }
+      }
+      return maxMillis;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+      return String.format(
+          "count=%d p50=%d p90=%d p99=%d mean=%d max=%d",
+          count,
+          getPercentileMillis(50),
+          getPercentileMillis(90),
+          getPercentileMillis(99),
+          getMeanMillis(),
+          maxMillis);
+    }
+  }
+}
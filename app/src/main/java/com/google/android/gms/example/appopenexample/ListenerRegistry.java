@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry of listeners for one kind of ad event. Listeners can be added or removed while an event
+ * is being dispatched, and a listener added with a {@link LifecycleOwner} is removed automatically
+ * once the owner is destroyed, so activities never have to unregister by hand.
+ *
+ * <p>{@link #add(LifecycleOwner, Object)} must be called on the main thread.
+ *
+ * @param <T> the listener type
+ */
+final class ListenerRegistry<T> {
+
+  /** Delivers one event to one listener. */
+  interface Dispatcher<T> {
+    void dispatch(@NonNull T listener);
+  }
+
+  /** A registered listener together with the observer that removes it. */
+  private static final class Registration<T> {
+    final T listener;
+    final Lifecycle lifecycle;
+    final DefaultLifecycleObserver observer;
+
+    Registration(T listener, Lifecycle lifecycle, DefaultLifecycleObserver observer) {
+      this.listener = listener;
+      this.lifecycle = lifecycle;
+      this.observer = observer;
+    }
+  }
+
+  private final CopyOnWriteArrayList<Registration<T>> registrations =
+      new CopyOnWriteArrayList<>();
+
+  /**
+   * Add a listener that stays registered until the owner is destroyed. Does nothing if the owner
+   * is already destroyed or the listener is already registered.
+   */
+  void add(@NonNull LifecycleOwner owner, @NonNull final T listener) {
+    Lifecycle lifecycle = owner.getLifecycle();
+    if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED || contains(listener)) {
+      return;
+    }
+    DefaultLifecycleObserver observer =
+        new DefaultLifecycleObserver() {
+          @Override
+          public void onDestroy(@NonNull LifecycleOwner owner) {
+            remove(listener);
+          }
+        };
+    registrations.add(new Registration<>(listener, lifecycle, observer));
+    lifecycle.addObserver(observer);
+  }
+
+  /** Remove a listener. Does nothing if it is not registered. */
+  void remove(@NonNull T listener) {
+    for (Registration<T> registration : registrations) {
+      if (registration.listener == listener && registrations.remove(registration)) {
+        registration.lifecycle.removeObserver(registration.observer);
+      }
+    }
+  }
+
+  /** Deliver an event to every listener registered when the dispatch starts. */
+  void dispatch(@NonNull Dispatcher<T> dispatcher) {
+    for (Registration<T> registration : registrations) {
+      dispatcher.dispatch(registration.listener);
+    }
+  }
+
+  /** Number of registered listeners. */
+  int size() {
+    return registrations.size();
+  }
+
+  /** Check if no listener is registered. */
+  boolean isEmpty() {
+    return registrations.isEmpty();
+  }
+
+  private boolean contains(T listener) {
+    for (Registration<T> registration : registrations) {
+      if (registration.listener == listener) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -15,12 +15,9 @@
  */
 package com.google.android.gms.example.appopenexample;
 
-import android.app.Activity;
 import android.app.Application;
 import android.content.Intent;
-import android.os.Build;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -28,8 +25,6 @@ import android.widget.Button;
 import android.widget.PopupMenu;
 import android.widget.Toast;
 
-import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.google.android.gms.tasks.Task;
@@ -42,16 +37,13 @@ import com.google.android.play.core.install.model.UpdateAvailability;
 /**
  * Main activity in the app.
  */
-public class MainActivity extends AppCompatActivity implements Application.ActivityLifecycleCallbacks, MyApplication.OnAdDismissedListener, MyApplication.OnAdFailedListener {
+public class MainActivity extends AppCompatActivity implements MyApplication.OnAdDismissedListener, MyApplication.OnAdFailedListener {
 
     private GoogleMobileAdsConsentManager googleMobileAdsConsentManager;
 
-    private static boolean isMainActivityVisible;
-    public FullScreenDialogFragment fullScreenDialog;
+    private AdCoverOverlay adCover;
     Button showAd;
 
-    static Boolean isFromSecond = false;
-
     MyApplication myApp;
 
 
@@ -59,19 +51,26 @@ public class MainActivity extends AppCompatActivity implements Application.Activ
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        adCover = new AdCoverOverlay(this);
         showAd = findViewById(R.id.showAd);
         myApp = (MyApplication) getApplication();
 
-        myApp.setAdDismissedListener(this);
-        myApp.setAdFailedListener(this);
+        myApp.addAdDismissedListener(this, this);
+        myApp.addAdFailedListener(this, this);
+        // The cover only goes up once a show has actually started, and comes down with every
+        // other state, so a skipped or capped show can never leave it on screen.
+        myApp.getAdState().observe(this, state -> {
+            if (state == AdStateMachine.State.SHOWING) {
+                adCover.show();
+            } else {
+                adCover.hide();
+            }
+        });
 
 
         googleMobileAdsConsentManager =
                 GoogleMobileAdsConsentManager.getInstance(getApplicationContext());
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            registerActivityLifecycleCallbacks(this);
-        }
 //    fullScreenDialog = new FullScreenDialogFragment();
 //    if (fullScreenDialog.isVisible())
 //    {
@@ -82,10 +81,6 @@ public class MainActivity extends AppCompatActivity implements Application.Activ
 
             @Override
             public void onClick(View v) {
-                if (myApp.willShow && myApp.appOpenAd != null) {
-                    fullScreenDialog = new FullScreenDialogFragment();
-                    fullScreenDialog.show(getSupportFragmentManager(), "FullScreenDialogFragment");
-                }
                 Application application = getApplication();
                 ((MyApplication) application)
                         .showAdIfAvailable(
@@ -93,17 +88,13 @@ public class MainActivity extends AppCompatActivity implements Application.Activ
                                 () -> {
                                     Intent intent = new Intent(MainActivity.this, SecondActivity.class);
                                     startActivity(intent);
-                                    fullScreenDialog.dismiss();
-                                    myApp.willShow = false;
+                                    adCover.hide();
                                 });
             }
         });
-    }
 
-    private void DismissDialog() {
-        if (fullScreenDialog != null) {
-            fullScreenDialog.dismiss();
-        }
+        // Marks the end of the Splash -> Main startup path for startup benchmarks.
+        reportFullyDrawn();
     }
 
     @Override
@@ -114,87 +105,6 @@ public class MainActivity extends AppCompatActivity implements Application.Activ
         return true;
     }
 
-    public boolean isMainActivityVisible() {
-        return isMainActivityVisible;
-    }
-
-    @Override
-    public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) {
-        DismissDialog();
-    }
-
-    @Override
-    public void onActivityStarted(@NonNull Activity activity) {
-        DismissDialog();
-    }
-
-    @Override
-    public void onActivityResumed(@NonNull Activity activity) {
-        if (activity instanceof MainActivity) {
-//            if (isMainActivityVisible) {
-                if (!isFromSecond){
-                    Log.e("TAG", "onActivityResumed: sdfsaf" );
-                    if (myApp.willShow && myApp.appOpenAd != null) {
-                        fullScreenDialog = new FullScreenDialogFragment();
-                        fullScreenDialog.show(getSupportFragmentManager(), "FullScreenDialogFragment");
-                        myApp.willShow = false;
-                    } else {
-                        if (fullScreenDialog != null) {
-                            fullScreenDialog.dismiss();
-                        }
-                    }
-                }else {
-                    if(myApp.isShown){
-                        Log.e("TAG", "onActivityResumed: hidebanner" );
-                    }
-
-                }
-
-//            } else {
-//                if (fullScreenDialog != null) {
-//                    fullScreenDialog.dismiss();
-//                }
-//            }
-        }
-    }
-
-    @Override
-    public void onActivityPaused(@NonNull Activity activity) {
-        if (activity instanceof MainActivity) {
-            isMainActivityVisible = true;
-        }
-        else {
-            isMainActivityVisible = false;
-        }
-    }
-
-    @Override
-    public void onActivityStopped(@NonNull Activity activity) {
-        if (activity instanceof MainActivity) {
-            isMainActivityVisible = true;
-        }
-        else {
-            isMainActivityVisible = false;
-
-        }
-    }
-
-    @Override
-    public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
-
-    }
-
-    @Override
-    public void onActivityDestroyed(@NonNull Activity activity) {
-        if (activity instanceof MainActivity) {
-            isMainActivityVisible = true;
-        }
-        else {
-            isMainActivityVisible = false;
-
-        }
-    }
-
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         View menuItemView = findViewById(item.getItemId());
@@ -230,13 +140,17 @@ public class MainActivity extends AppCompatActivity implements Application.Activ
         moveTaskToBack(true);
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        adCover.onTrimMemory(level);
+    }
+
     @Override
     public void onAdDismissed() {
-        if (fullScreenDialog != null) {
-            fullScreenDialog.dismiss();
+        adCover.hide();
 //      Application application = getApplication();
 //      ((MyApplication) application).loadAd(this);
-        }
     }
 
     @Override
@@ -256,9 +170,7 @@ public class MainActivity extends AppCompatActivity implements Application.Activ
 
     @Override
     public void OnAdFailed() {
-        if (fullScreenDialog != null) {
-            fullScreenDialog.dismiss();
-        }
+        adCover.hide();
     }
 
     void checkForUpdate() {
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads an app open ad from one of several ad units. Units are requested either all at once,
+ * where the first fill wins, or one after another in priority order, where a unit that has not
+ * answered within the step timeout no longer blocks the next one. Fills that arrive after the
+ * winner are handed out as extras so they can be pooled instead of wasted, and the load only
+ * settles once those extras have arrived or timed out, so the caller does not start another load
+ * while requests of this one are still out.
+ *
+ * <p>Latency and fill statistics are tracked per unit. Must be used from the thread the delegate
+ * loader calls back on.
+ */
+final class MultiUnitAdLoader {
+
+  /** How the ad units are requested. */
+  enum Strategy {
+    /** Request every unit at once; the first fill wins. */
+    PARALLEL,
+    /** Request units in priority order, moving on after a failure or a step timeout. */
+    WATERFALL
+  }
+
+  /** Interface definition for callbacks of a multi-unit load. */
+  interface Callback {
+    /** Called with the first ad that fills. */
+    void onAdLoaded(@NonNull ShowableAd ad);
+
+    /** Called with every ad that fills after the first one. */
+    void onExtraAdLoaded(@NonNull ShowableAd ad);
+
+    /**
+     * Called once after the first fill, when no other unit is pending any more or the remaining
+     * ones have taken longer than the step timeout. Late extras may still arrive afterwards.
+     */
+    void onLoadSettled();
+
+    /** Called once every unit failed, with the error of the last failure. */
+    void onAdFailedToLoad(int errorCode, @NonNull String message);
+  }
+
+  private final Scheduler scheduler;
+  private final String[] adUnitIds;
+  private final Strategy strategy;
+  private final long stepTimeoutMillis;
+  private final UnitStats[] unitStats;
+  private AdLoader adLoader;
+
+  /**
+   * Constructor.
+   *
+   * @param adLoader the loader used for each single-unit request
+   * @param scheduler the scheduler used for step timeouts and latency measurement
+   * @param adUnitIds the ad unit IDs in priority order
+   * @param strategy how the ad units are requested
+   * @param stepTimeoutMillis how long a waterfall step may take before the next unit is
+   *     requested, and how long units still pending after the first fill may hold up {@link
+   *     Callback#onLoadSettled()}
+   */
+  MultiUnitAdLoader(
+      @NonNull AdLoader adLoader,
+      @NonNull Scheduler scheduler,
+      @NonNull String[] adUnitIds,
+      @NonNull Strategy strategy,
+      long stepTimeoutMillis) {
+    if (adUnitIds.length == 0) {
+      throw new IllegalArgumentException("At least one ad unit ID is required.");
+    }
+    this.adLoader = adLoader;
+    this.scheduler = scheduler;
+    this.adUnitIds = adUnitIds.clone();
+    this.strategy = strategy;
+    this.stepTimeoutMillis = stepTimeoutMillis;
+    this.unitStats = new UnitStats[adUnitIds.length];
+    for (int i = 0; i < adUnitIds.length; i++) {
+      unitStats[i] = new UnitStats(adUnitIds[i]);
+    }
+  }
+
+  /** Set the loader used for each single-unit request. */
+  void setAdLoader(@NonNull AdLoader adLoader) {
+    this.adLoader = adLoader;
+  }
+
+  /** Start a load across the configured ad units. */
+  void load(@NonNull Context context, @NonNull Callback callback) {
+    Request request = new Request(context, callback);
+    if (strategy == Strategy.PARALLEL) {
+      for (int i = 0; i < adUnitIds.length; i++) {
+        request.requestUnit(i);
+      }
+    } else {
+      request.requestUnit(0);
+    }
+  }
+
+  /** Per-unit statistics, in priority order. */
+  @NonNull
+  String getStatsSummary() {
+    StringBuilder builder = new StringBuilder();
+    for (UnitStats stats : unitStats) {
+      if (builder.length() > 0) {
+        builder.append(" | ");
+      }
+      builder.append(stats);
+    }
+    return builder.toString();
+  }
+
+  /** State of one multi-unit load. */
+  private final class Request {
+    private final Context context;
+    private final Callback callback;
+    private boolean isDelivered;
+    private boolean isSettled;
+    private int pendingCount;
+    private int lastRequestedStep = -1;
+    private Scheduler.Cancellable stepTimeout;
+    private Scheduler.Cancellable settleTimeout;
+
+    Request(Context context, Callback callback) {
+      this.context = context;
+      this.callback = callback;
+    }
+
+    void requestUnit(final int step) {
+      final UnitStats stats = unitStats[step];
+      final long startTime = scheduler.now();
+      stats.requests.incrementAndGet();
+      pendingCount++;
+      lastRequestedStep = step;
+      if (strategy == Strategy.WATERFALL && step + 1 < adUnitIds.length) {
+        stepTimeout = scheduler.schedule(() -> onStepTimedOut(step), stepTimeoutMillis);
+      }
+      adLoader.load(
+          context,
+          adUnitIds[step],
+          new AdLoader.LoadCallback() {
+            @Override
+            public void onAdLoaded(@NonNull ShowableAd ad) {
+              stats.recordFill(scheduler.now() - startTime);
+              pendingCount--;
+              cancelStepTimeout(step);
+              if (isDelivered) {
+                callback.onExtraAdLoaded(ad);
+              } else {
+                isDelivered = true;
+                callback.onAdLoaded(ad);
+              }
+              maybeSettle();
+            }
+
+            @Override
+            public void onAdFailedToLoad(int errorCode, @NonNull String message) {
+              stats.recordFailure(scheduler.now() - startTime);
+              pendingCount--;
+              if (isDelivered) {
+                maybeSettle();
+                return;
+              }
+              if (strategy == Strategy.WATERFALL
+                  && step == lastRequestedStep
+                  && step + 1 < adUnitIds.length) {
+                cancelStepTimeout(step);
+                requestUnit(step + 1);
+              } else if (pendingCount == 0 && isLastStepRequested()) {
+                callback.onAdFailedToLoad(errorCode, message);
+              }
+            }
+          });
+    }
+
+    private void onStepTimedOut(int step) {
+      stepTimeout = null;
+      if (isDelivered || step != lastRequestedStep) {
+        return;
+      }
+      // Keep waiting for the slow unit, but let the next one race it.
+      unitStats[step].timeouts.incrementAndGet();
+      requestUnit(step + 1);
+    }
+
+    /** Settle a delivered load once nothing is pending, or after the step timeout. */
+    private void maybeSettle() {
+      if (isSettled) {
+        return;
+      }
+      if (pendingCount == 0) {
+        settle();
+      } else if (settleTimeout == null) {
+        settleTimeout = scheduler.schedule(this::settle, stepTimeoutMillis);
+      }
+    }
+
+    private void settle() {
+      if (isSettled) {
+        return;
+      }
+      isSettled = true;
+      if (settleTimeout != null) {
+        settleTimeout.cancel();
+        settleTimeout = null;
+      }
+      callback.onLoadSettled();
+    }
+
+    private void cancelStepTimeout(int step) {
+      if (stepTimeout != null && step == lastRequestedStep) {
+        stepTimeout.cancel();
+        stepTimeout = null;
+      }
+    }
+
+    private boolean isLastStepRequested() {
+      return strategy == Strategy.PARALLEL || lastRequestedStep == adUnitIds.length - 1;
+    }
+  }
+
+  /** Request counts and latency of a single ad unit. */
+  private static final class UnitStats {
+    final String adUnitId;
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong fills = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+    final AtomicLong timeouts = new AtomicLong();
+    final LatencyHistogram latency = new LatencyHistogram();
+
+    UnitStats(String adUnitId) {
+      this.adUnitId = adUnitId;
+    }
+
+    void recordFill(long latencyMillis) {
+      fills.incrementAndGet();
+      latency.record(latencyMillis);
+    }
+
+    void recordFailure(long latencyMillis) {
+      failures.incrementAndGet();
+      latency.record(latencyMillis);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+      long requestCount = requests.get();
+      return String.format(
+          "%s requests=%d filled=%d failed=%d timeouts=%d fillRate=%.3f latency[%s]",
+          adUnitId,
+          requestCount,
+          fills.get(),
+          failures.get(),
+          timeouts.get(),
+          requestCount == 0 ? 0 : (double) fills.get() / requestCount,
+          latency.snapshot());
+    }
+  }
+}
@@ -17,29 +17,22 @@ package com.google.android.gms.example.appopenexample;
 
 import android.app.Activity;
 import android.app.Application;
-import android.app.Application.ActivityLifecycleCallbacks;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
-import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
-import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LiveData;
 import androidx.lifecycle.LifecycleOwner;
 import androidx.lifecycle.ProcessLifecycleOwner;
-import com.google.android.gms.ads.AdError;
-import com.google.android.gms.ads.AdRequest;
-import com.google.android.gms.ads.FullScreenContentCallback;
-import com.google.android.gms.ads.LoadAdError;
-import com.google.android.gms.ads.appopen.AppOpenAd;
-import com.google.android.gms.ads.appopen.AppOpenAd.AppOpenAdLoadCallback;
-import java.util.Date;
+import com.google.android.gms.example.appopenexample.ActivityLifecycleDispatcher.Event;
+import java.util.Random;
+import java.util.concurrent.Executors;
 
 /** Application class that initializes, loads and show ads when activities change states. */
-public class MyApplication extends Application
-    implements ActivityLifecycleCallbacks, DefaultLifecycleObserver {
+public class MyApplication extends Application implements DefaultLifecycleObserver {
 
 
   // Interface definition
@@ -51,124 +44,244 @@ public class MyApplication extends Application
     void OnAdFailed();
   }
 
-  private OnAdDismissedListener adDismissedListener;
-  private OnAdFailedListener adFailedListener;
+  private final ListenerRegistry<OnAdDismissedListener> adDismissedListeners =
+      new ListenerRegistry<>();
+  private final ListenerRegistry<OnAdFailedListener> adFailedListeners = new ListenerRegistry<>();
 
-
-  public void setAdDismissedListener(OnAdDismissedListener listener) {
-    this.adDismissedListener = listener;
-    appOpenAdManager.loadAd(this);
+  /**
+   * Add a listener to be notified when an app open ad is dismissed. It is removed automatically
+   * when the owner is destroyed.
+   */
+  public void addAdDismissedListener(
+      @NonNull LifecycleOwner owner, @NonNull OnAdDismissedListener listener) {
+    adDismissedListeners.add(owner, listener);
   }
 
-  public void setAdFailedListener(OnAdFailedListener listener)
-  {
-    this.adFailedListener = listener;
-    appOpenAdManager.loadAd(this);
+  /**
+   * Add a listener to be notified when an app open ad fails to show. It is removed automatically
+   * when the owner is destroyed.
+   */
+  public void addAdFailedListener(
+      @NonNull LifecycleOwner owner, @NonNull OnAdFailedListener listener) {
+    adFailedListeners.add(owner, listener);
   }
 
   private AppOpenAdManager appOpenAdManager;
-  private Activity currentActivity;
+  private StartupPipeline startupPipeline;
+  private ForegroundShowScheduler foregroundShowScheduler;
+  private final ForegroundActivityTracker activityTracker = new ForegroundActivityTracker();
+  private final ActivityLifecycleDispatcher activityLifecycleDispatcher =
+      new ActivityLifecycleDispatcher();
   private static final String TAG = "MyApplication";
 
-  public boolean willShow = false;
-  public boolean isShown = false;
-
-  MainActivity mainActivity;
-  public AppOpenAd appOpenAd = null;
-
 
   @Override
   public void onCreate() {
+    AdTrace.beginSection("AppOpen:Application.onCreate");
     super.onCreate();
-    this.registerActivityLifecycleCallbacks(this);
+    // Register the dispatcher exactly once; everything else subscribes to it.
+    registerActivityLifecycleCallbacks(activityLifecycleDispatcher);
+    activityLifecycleDispatcher.subscribe(
+        ProcessLifecycleOwner.get(), Event.STARTED, this::onActivityStarted);
+    activityLifecycleDispatcher.subscribe(
+        ProcessLifecycleOwner.get(), Event.DESTROYED, this::onActivityDestroyed);
 
     ProcessLifecycleOwner.get().getLifecycle().addObserver(this);
-    appOpenAdManager = new AppOpenAdManager();
-    mainActivity = new MainActivity();
+    Scheduler mainScheduler = Scheduler.mainThread();
+    Scheduler ioScheduler = Scheduler.fromExecutor(Executors.newSingleThreadScheduledExecutor());
+    if (BuildConfig.USE_FAKE_AD_LOADER) {
+      // Benchmark builds run offline: ads come from the fake network and consent is assumed. The
+      // frequency cap is lifted too, or every iteration after the first would find the ad capped.
+      startOfflineProcess(
+          mainScheduler,
+          ioScheduler,
+          new AdMetrics(),
+          new Random(),
+          new FakeAdLoader.Builder(mainScheduler)
+              .setLatencyMillis(100, 300)
+              .setShowDurationMillis(1500)
+              .build());
+      appOpenAdManager.isFrequencyCapEnabled = false;
+    } else {
+      createAdComponents(mainScheduler, ioScheduler, new AdMetrics(), new Random(), true);
+    }
+    AdTrace.endSection();
+  }
+
+  /**
+   * Replace the ad components with ones that serve ads from the given loader, without the Mobile
+   * Ads SDK and with consent assumed, as if the process had just started. Benchmark builds run this
+   * way; tests also pass virtual schedulers to simulate restarts of the process.
+   */
+  @VisibleForTesting
+  void startOfflineProcess(
+      @NonNull Scheduler mainScheduler,
+      @NonNull Scheduler ioScheduler,
+      @NonNull AdMetrics metrics,
+      @NonNull Random random,
+      @NonNull AdLoader adLoader) {
+    createAdComponents(mainScheduler, ioScheduler, metrics, random, false);
+    setAdLoader(adLoader);
+    GoogleMobileAdsConsentManager.getInstance(this).assumeConsentForOfflineTesting();
+  }
+
+  /** Create the ad manager, the startup pipeline and the foreground show scheduler. */
+  private void createAdComponents(
+      Scheduler mainScheduler,
+      Scheduler ioScheduler,
+      AdMetrics metrics,
+      Random random,
+      boolean isMobileAdsSdkEnabled) {
+    appOpenAdManager = new AppOpenAdManager(mainScheduler, ioScheduler, metrics, random);
+    startupPipeline =
+        new StartupPipeline(
+            this,
+            command -> new Thread(command, "StartupPipeline").start(),
+            mainScheduler,
+            isMobileAdsSdkEnabled);
+    foregroundShowScheduler =
+        new ForegroundShowScheduler(mainScheduler, this::showAdInForegroundActivity);
   }
 
   /**
-   * DefaultLifecycleObserver method that shows the app open ad when the app moves to foreground.
+   * DefaultLifecycleObserver method that shows the app open ad when the app moves to foreground,
+   * unless it only left the foreground for a moment.
    */
   @Override
   public void onStart(@NonNull LifecycleOwner owner) {
     DefaultLifecycleObserver.super.onStart(owner);
-    // Show the ad (if available) when the app moves to foreground.
-    //Add delay here
-    addDelay();
-//    appOpenAdManager.showAdIfAvailable(currentActivity);
+    appOpenAdManager.onMovedToForeground();
+    if (!appOpenAdManager.isForegroundShowEligible()) {
+      return;
+    }
+    // Show the ad (if available) once the foreground activity has drawn its first frame.
+    foregroundShowScheduler.onForeground();
   }
 
-  void addDelay()
-  {
-    Handler handler = new Handler(Looper.getMainLooper()); // Get Handler to main thread
-
-    Runnable runnable = new Runnable() {
-      @Override
-      public void run() {
-        appOpenAdManager.showAdIfAvailable(currentActivity);
-      }
-    };
-
-// Schedule the runnable with a 2 second delay
-    handler.postDelayed(runnable, 10);
+  /**
+   * DefaultLifecycleObserver method that cancels a pending show and holds pending load retries in
+   * the background.
+   */
+  @Override
+  public void onStop(@NonNull LifecycleOwner owner) {
+    DefaultLifecycleObserver.super.onStop(owner);
+    foregroundShowScheduler.onBackground();
+    appOpenAdManager.onMovedToBackground();
   }
 
-  /** ActivityLifecycleCallback methods. */
+  /** Release cached ads when the system asks to trim memory while the app is in the background. */
   @Override
-  public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) {
-
+  public void onTrimMemory(int level) {
+    super.onTrimMemory(level);
+    appOpenAdManager.onTrimMemory(level);
   }
 
-  @Override
-  public void onActivityStarted(@NonNull Activity activity) {
+  /** Track the activity that can show the ad, and start the pipeline if nothing has yet. */
+  private void onActivityStarted(@NonNull Activity activity) {
+    // SplashActivity starts the pipeline on a normal launch. When the system restores another
+    // activity after process death the splash is skipped, so the first activity that starts runs
+    // consent and SDK initialization instead; until then every load would be dropped.
+    if (!startupPipeline.isStarted()) {
+      startupPipeline.start(activity, null);
+    }
+
     // An ad activity is started when an ad is showing, which could be AdActivity class from Google
     // SDK or another activity class implemented by a third party mediation partner. Updating the
-    // currentActivity only when an ad is not showing will ensure it is not an ad activity, but the
-    // one that shows the ad.
+    // foreground activity only when an ad is not showing will ensure it is not an ad activity, but
+    // the one that shows the ad.
 
-    if (!appOpenAdManager.isShowingAd) {
-      currentActivity = activity;
-    }
-    else {
-      willShow = true;
+    if (appOpenAdManager.stateMachine.getState() != AdStateMachine.State.SHOWING) {
+      activityTracker.setForegroundActivity(activity);
+      foregroundShowScheduler.watchFirstFrame(activity);
     }
   }
 
-  @Override
-  public void onActivityResumed(@NonNull Activity activity) {
-
+  private void onActivityDestroyed(@NonNull Activity activity) {
+    activityTracker.clear(activity);
   }
 
-  @Override
-  public void onActivityPaused(@NonNull Activity activity) {
-
+  /** Show the ad (if available) in the activity that is in the foreground at show time. */
+  private void showAdInForegroundActivity() {
+    Activity activity = activityTracker.getForegroundActivity();
+    if (activity != null) {
+      appOpenAdManager.showAdIfAvailable(activity);
+    }
   }
 
-  @Override
-  public void onActivityStopped(@NonNull Activity activity) {
+  /**
+   * Load an app open ad.
+   *
+   * @param activity the activity that shows the app open ad
+   */
+  public void loadAd(@NonNull Activity activity) {
+    // We wrap the loadAd to enforce that other classes only interact with MyApplication
+    // class.
+    appOpenAdManager.loadAd(activity);
+  }
 
+  /**
+   * Load an app open ad and get notified once it has loaded or failed.
+   *
+   * @param context the context used to load the app open ad
+   * @param onLoadAdCompleteListener the listener to be notified when the load is complete
+   */
+  public void loadAd(
+      @NonNull Context context, @NonNull OnLoadAdCompleteListener onLoadAdCompleteListener) {
+    appOpenAdManager.loadAd(context, onLoadAdCompleteListener);
   }
 
-  @Override
-  public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
+  /**
+   * Wait for an app open ad, starting a load if none is cached or in flight. Concurrent callers
+   * share the same load. Must be called on the main thread.
+   *
+   * @param context the context used to load the app open ad
+   * @param timeoutMillis how long to wait before the future resolves to {@link
+   *     AdResult.Status#TIMED_OUT}
+   * @return a future that resolves on the main thread to the ready ad, a failure or a timeout
+   */
+  @NonNull
+  public SettableFuture<AdResult> awaitAd(@NonNull Context context, long timeoutMillis) {
+    return appOpenAdManager.awaitAd(context, timeoutMillis);
+  }
 
+  /** The single application-level source of activity lifecycle events. */
+  ActivityLifecycleDispatcher getActivityLifecycleDispatcher() {
+    return activityLifecycleDispatcher;
   }
 
-  @Override
-  public void onActivityDestroyed(@NonNull Activity activity) {
+  /** The process-wide pipeline that gathers consent, initializes the SDK and loads the first ad. */
+  StartupPipeline getStartupPipeline() {
+    return startupPipeline;
+  }
 
+  /**
+   * Called by the startup pipeline once the Mobile Ads SDK is initialized, or once initializing it
+   * was skipped. Loads requested before that are dropped, so the pipeline decides when the first
+   * ad request goes out.
+   */
+  void onMobileAdsSdkInitialized() {
+    appOpenAdManager.onMobileAdsSdkInitialized();
   }
 
   /**
-   * Load an app open ad.
-   *
-   * @param activity the activity that shows the app open ad
+   * Replace the loader used to request app open ads, e.g. with a {@link FakeAdLoader} so the app
+   * runs without network access.
    */
-  public void loadAd(@NonNull Activity activity) {
-    // We wrap the loadAd to enforce that other classes only interact with MyApplication
-    // class.
-    appOpenAdManager.loadAd(activity);
+  @VisibleForTesting
+  public void setAdLoader(@NonNull AdLoader adLoader) {
+    appOpenAdManager.setAdLoader(adLoader);
+  }
+
+  /** Metrics of the app open ad lifecycle, for recording measurements taken by the UI. */
+  @NonNull
+  AdMetrics getAdMetrics() {
+    return appOpenAdManager.metrics;
+  }
+
+  /** Read-only, observable state of the app open ad for the UI. */
+  @NonNull
+  public LiveData<AdStateMachine.State> getAdState() {
+    return appOpenAdManager.stateMachine.getObservableState();
   }
 
   /**
@@ -181,15 +294,9 @@ public class MyApplication extends Application
       @NonNull Activity activity, @NonNull OnShowAdCompleteListener onShowAdCompleteListener) {
     // We wrap the showAdIfAvailable to enforce that other classes only interact with MyApplication
     // class.
-//    addDelay(activity, onShowAdCompleteListener);
     appOpenAdManager.showAdIfAvailable(activity, onShowAdCompleteListener);
   }
 
-//  void addDelay(Activity activity, OnShowAdCompleteListener onShowAdCompleteListener)
-//  {
-//    appOpenAdManager.showAdIfAvailable(activity, onShowAdCompleteListener);
-//  }
-
   /**
    * Interface definition for a callback to be invoked when an app open ad is complete
    * (i.e. dismissed or fails to show).
@@ -198,92 +305,639 @@ public class MyApplication extends Application
     void onShowAdComplete();
   }
 
-  /** Inner class that loads and shows app open ads. */
+  /**
+   * Interface definition for a callback to be invoked when an app open ad load is complete
+   * (i.e. loaded or failed to load).
+   */
+  public interface OnLoadAdCompleteListener {
+    void onLoadAdComplete(boolean loaded);
+  }
+
+  /**
+   * Inner class that loads and shows app open ads. Its package-private methods are driven by this
+   * application on the main thread, or by a session simulation on a virtual clock in tests.
+   */
   public class AppOpenAdManager {
 
     private static final String LOG_TAG = "AppOpenAdManager";
-    private static final String AD_UNIT_ID = "ca-app-pub-3940256099942544/9257395921";
+    /** Ad unit IDs in priority order. */
+    private static final String[] AD_UNIT_IDS = {
+      "ca-app-pub-3940256099942544/9257395921", "ca-app-pub-3940256099942544/3419835294"
+    };
+
+    /** How the ad units are requested; see {@link MultiUnitAdLoader.Strategy}. */
+    private static final MultiUnitAdLoader.Strategy LOAD_STRATEGY =
+        MultiUnitAdLoader.Strategy.PARALLEL;
+
+    /**
+     * How long a waterfall step may take before the next ad unit is requested, and how long other
+     * units may still be pending after the first fill before the next load can start.
+     */
+    private static final long WATERFALL_STEP_TIMEOUT_MILLIS = 3000;
+
+    /** Number of ads kept preloaded so back-to-back foregrounds never wait on the network. */
+    private static final int AD_POOL_SIZE = 2;
+
+    /**
+     * Ad references in the app open beta will time out after four hours, but this time limit may
+     * change in future beta versions. For details, see:
+     * https://support.google.com/admob/answer/9341964?hl=en
+     */
+    private static final long AD_TTL_MILLIS = 4 * 3600000L;
+
+    /** How long before its TTL a cached ad is replaced in the background. */
+    private static final long AD_REFRESH_MARGIN_MILLIS = 10 * 60000L;
+
+    /** How long before a predicted return an ad is loaded in the background. */
+    private static final long PRELOAD_LEAD_MILLIS = 10 * 60000L;
+
+    /** How far ahead a return is predicted; later returns load on demand. */
+    private static final long PRELOAD_HORIZON_MILLIS = 24 * 3600000L;
 
     private final GoogleMobileAdsConsentManager googleMobileAdsConsentManager =
         GoogleMobileAdsConsentManager.getInstance(getApplicationContext());
 
-    public boolean isLoadingAd = false;
-    public boolean isShowingAd = false;
+    /** Single source of truth for whether an ad is loading, ready or showing. */
+    private final AdStateMachine stateMachine = new AdStateMachine();
+
+
+    /** Preloaded ads, each tagged with its load time to ensure you don't show an expired ad. */
+    private final AdPool<ShowableAd> adPool = new AdPool<>(AD_POOL_SIZE, AD_TTL_MILLIS);
+
+    /** Main thread scheduler; its monotonic clock is immune to changes of the device clock. */
+    private final Scheduler scheduler;
+
+    /** Loader used to request ads; its delegate is swapped for a fake one without the SDK. */
+    private final MultiUnitAdLoader adLoader;
+
+    /** Retries failed loads with backoff instead of waiting for the next foreground. */
+    private final RetryScheduler retryScheduler;
+
+    /** Pending replacement of the oldest cached ad shortly before it expires. */
+    private final Runnable refreshTask = this::refreshExpiringAd;
+    private Scheduler.Cancellable pendingRefresh;
+
+    /** Pending load shortly before the user's predicted return, while in the background. */
+    private final Runnable preloadTask = this::runPredictedPreload;
+    private Scheduler.Cancellable pendingPreload;
+
+    /** Frequency cap: at most this many impressions in any rolling hour and day. */
+    private static final int MAX_IMPRESSIONS_PER_HOUR = 4;
+
+    private static final int MAX_IMPRESSIONS_PER_DAY = 12;
+
+    /** Minimum time between two impressions. */
+    private static final long MIN_IMPRESSION_INTERVAL_MILLIS = 60000L;
+
+    /**
+     * Minimum time in the background before a warm return may show an ad, so quick trips to a
+     * permission dialog or the share sheet skip the show path.
+     */
+    private static final long MIN_BACKGROUND_MILLIS = 30000L;
+
+    /** Number of recent background durations kept by the session timer. */
+    private static final int SESSION_HISTORY_SIZE = 32;
+
+    /** Times trips to the background on elapsed realtime, which keeps counting in deep sleep. */
+    private final SessionTimer sessionTimer =
+        new SessionTimer(MIN_BACKGROUND_MILLIS, SESSION_HISTORY_SIZE);
+
+    private static final String IMPRESSIONS_FILE_NAME = "app_open_impressions";
+
+    private static final String SESSIONS_FILE_NAME = "app_open_sessions";
+
+    /** Persisted impression history; checks stay in memory, disk I/O runs off the main thread. */
+    private final FrequencyCap frequencyCap;
+
+    /** Whether shows are checked against the frequency cap; lifted in benchmark builds only. */
+    private boolean isFrequencyCapEnabled = true;
+
+    /** Number of ad events kept for debugging. */
+    private static final int EVENT_LOG_CAPACITY = 256;
+
+    /** Allocation-free record of ad callbacks, dumped to logcat in debug builds. */
+    private final AdEventLog eventLog = new AdEventLog(EVENT_LOG_CAPACITY);
+
+    /** Load, show and latency metrics for the ad lifecycle. */
+    private final AdMetrics metrics;
+
+    /** Time the in-flight load was requested. */
+    private long loadStartTime;
+
+    /** Time the app last came to the foreground, or -1 once that foreground had its attempt. */
+    private long foregroundTime = -1;
+
+    /** Whether cached ads were released to free memory and loading is held until the foreground. */
+    private boolean isReleasedForMemory;
+
+    /** Whether the startup pipeline has initialized the SDK; nothing loads before that. */
+    private boolean isSdkInitialized;
+
+    /** Decides whether the pool is topped up in the background under current device conditions. */
+    private final PrefetchPolicy prefetchPolicy = new PrefetchPolicy(getApplicationContext());
+
+    /** Whether the last prefetch was deferred, so the next foreground checks again. */
+    private boolean isPrefetchDeferred;
+
+    /** Learns when the user returns, so loads are skipped when nobody is likely to see the ad. */
+    private final ForegroundPredictor foregroundPredictor;
+
+    /**
+     * Completion of the in-flight load, shared by every caller waiting for it, or null if nobody
+     * is waiting.
+     */
+    private SettableFuture<Boolean> pendingLoad;
+
+    /**
+     * Constructor.
+     *
+     * @param scheduler the main thread scheduler, or a virtual one when driven by a simulation
+     * @param ioScheduler the scheduler that runs the small disk reads and writes of the persisted
+     *     ad state off the main thread
+     * @param metrics the metrics the ad lifecycle is recorded in
+     * @param random the source of jitter for load retries
+     */
+    AppOpenAdManager(
+        @NonNull Scheduler scheduler,
+        @NonNull Scheduler ioScheduler,
+        @NonNull AdMetrics metrics,
+        @NonNull Random random) {
+      this.scheduler = scheduler;
+      this.metrics = metrics;
+      adLoader =
+          new MultiUnitAdLoader(
+              new GmsAdLoader(),
+              scheduler,
+              AD_UNIT_IDS,
+              LOAD_STRATEGY,
+              WATERFALL_STEP_TIMEOUT_MILLIS);
+      retryScheduler = new RetryScheduler(scheduler, random);
+      frequencyCap =
+          new FrequencyCap(
+              getApplicationContext(),
+              IMPRESSIONS_FILE_NAME,
+              ioScheduler,
+              MAX_IMPRESSIONS_PER_HOUR,
+              MAX_IMPRESSIONS_PER_DAY,
+              MIN_IMPRESSION_INTERVAL_MILLIS);
+      foregroundPredictor =
+          new ForegroundPredictor(getApplicationContext(), SESSIONS_FILE_NAME, ioScheduler);
+      frequencyCap.preload();
+      foregroundPredictor.preload();
+      adPool.setOnEvictedListener(
+          new AdPool.OnEvictedListener() {
+            @Override
+            public void onExpired(int count) {
+              metrics.recordExpiredUnused(count);
+            }
+
+            @Override
+            public void onReplaced(int count) {
+              metrics.recordReplacedUnused(count);
+            }
+          });
+    }
+
+    /** Set the loader used for each single-unit ad request. */
+    void setAdLoader(@NonNull AdLoader adLoader) {
+      this.adLoader.setAdLoader(adLoader);
+    }
+
+    /** Allow loads from now on, once the startup pipeline has initialized the SDK. */
+    void onMobileAdsSdkInitialized() {
+      isSdkInitialized = true;
+    }
+
+    /** Called when the app moves to the foreground. */
+    void onMovedToForeground() {
+      foregroundTime = scheduler.now();
+      sessionTimer.onForeground(foregroundTime);
+      foregroundPredictor.onForeground(scheduler.currentTimeMillis());
+      retryScheduler.resume();
+      cancelPredictedPreload();
+      if (isReleasedForMemory || isPrefetchDeferred) {
+        isReleasedForMemory = false;
+        if (googleMobileAdsConsentManager.canRequestAds()) {
+          prefetch();
+        }
+      }
+    }
+
+    /**
+     * Check if the current foreground may show an ad: always on a cold start, and on a warm return
+     * only after the minimum time in the background.
+     */
+    boolean isForegroundShowEligible() {
+      if (sessionTimer.isShowEligible()) {
+        return true;
+      }
+      Log.d(
+          LOG_TAG,
+          "Skipping the show after " + sessionTimer.getLastBackgroundMillis() + " ms away.");
+      metrics.recordShortSwitch();
+      foregroundTime = -1;
+      return false;
+    }
+
+    /**
+     * Release every cached ad at trim levels where the process is in the background and likely to
+     * be killed, and hold loading until the next foreground.
+     *
+     * @param level the level passed to {@code onTrimMemory}
+     */
+    void onTrimMemory(int level) {
+      if (level < ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+          || stateMachine.getState() == AdStateMachine.State.SHOWING) {
+        return;
+      }
+      isReleasedForMemory = true;
+      retryScheduler.cancel();
+      // Nothing loads until the next foreground, so callers waiting for a retry give up now.
+      if (!stateMachine.isLoading()) {
+        notifyLoadAdComplete(false);
+      }
+      if (pendingRefresh != null) {
+        pendingRefresh.cancel();
+        pendingRefresh = null;
+      }
+      cancelPredictedPreload();
+      int released = adPool.size(scheduler.now());
+      if (released == 0) {
+        return;
+      }
+      adPool.clear();
+      stateMachine.onAdsReleased();
+      metrics.recordReleasedUnused(released);
+      Log.d(LOG_TAG, "Released " + released + " cached ads at trim level " + level + ".");
+      eventLog.record(AdEventLog.Type.ADS_RELEASED, released, scheduler.now());
+    }
+
+    /** Called when the app moves to the background. */
+    void onMovedToBackground() {
+      foregroundTime = -1;
+      sessionTimer.onBackground(scheduler.now());
+      retryScheduler.pause();
+      frequencyCap.flushSoon();
+      foregroundPredictor.onBackground(scheduler.currentTimeMillis());
+      schedulePredictedPreload();
+      if (BuildConfig.DEBUG) {
+        Log.d(LOG_TAG, "Metrics: " + metrics.snapshot());
+        Log.d(LOG_TAG, "Ad units: " + adLoader.getStatsSummary());
+        Log.d(LOG_TAG, "Sessions: " + sessionTimer.getStatsSummary());
+        eventLog.dumpToLogcat();
+      }
+    }
+
+    /**
+     * Load an ad and notify the listener once an ad is available or the load failed.
+     *
+     * @param context the context of the activity that loads the ad
+     * @param onLoadAdCompleteListener the listener to be notified when the load is complete
+     */
+    void loadAd(Context context, OnLoadAdCompleteListener onLoadAdCompleteListener) {
+      joinLoad(context)
+          .addListener(
+              loaded -> onLoadAdCompleteListener.onLoadAdComplete(Boolean.TRUE.equals(loaded)));
+    }
+
+    /**
+     * Single-flight entry point: return a future for the in-flight load, starting one if needed.
+     * Every concurrent caller gets the same future, so no request is ever duplicated. If no load
+     * can start and no retry is pending, e.g. while loading is held after a memory trim, the future
+     * resolves to false right away instead of waiting for a load that never comes.
+     */
+    private SettableFuture<Boolean> joinLoad(Context context) {
+      if (adPool.hasAd(scheduler.now())) {
+        SettableFuture<Boolean> ready = new SettableFuture<>();
+        ready.set(true);
+        return ready;
+      }
+      if (pendingLoad == null) {
+        pendingLoad = new SettableFuture<>();
+      }
+      SettableFuture<Boolean> load = pendingLoad;
+      loadAd(context);
+      if (!stateMachine.isLoading() && !retryScheduler.isRetryPending()) {
+        notifyLoadAdComplete(false);
+      }
+      return load;
+    }
+
+    /**
+     * Wait for the shared load, or for the timeout, whichever comes first.
+     *
+     * @see MyApplication#awaitAd
+     */
+    SettableFuture<AdResult> awaitAd(Context context, long timeoutMillis) {
+      if (timeoutMillis < 0) {
+        throw new IllegalArgumentException("timeoutMillis must not be negative: " + timeoutMillis);
+      }
+      AdWaiter waiter = new AdWaiter(joinLoad(context));
+      waiter.start(timeoutMillis);
+      return waiter.result;
+    }
+
+    /** Resolves one {@link #awaitAd} future from the shared load or from its own timeout. */
+    private final class AdWaiter implements SettableFuture.Listener<Boolean>, Runnable {
+      final SettableFuture<AdResult> result = new SettableFuture<>();
+      private final SettableFuture<Boolean> load;
+      private Scheduler.Cancellable timeout;
+
+      AdWaiter(SettableFuture<Boolean> load) {
+        this.load = load;
+      }
 
-    FullScreenDialogFragment dialogFragment = new FullScreenDialogFragment();
+      void start(long timeoutMillis) {
+        // Scheduled first, so a load that is already complete can cancel it right away.
+        timeout = scheduler.schedule(this, timeoutMillis);
+        load.addListener(this);
+      }
+
+      /** The shared load completed. */
+      @Override
+      public void onComplete(@Nullable Boolean loaded) {
+        timeout.cancel();
+        ShowableAd ad = Boolean.TRUE.equals(loaded) ? adPool.peek(scheduler.now()) : null;
+        result.set(ad != null ? AdResult.loaded(ad) : AdResult.failed());
+      }
 
-    /** Keep track of the time an app open ad is loaded to ensure you don't show an expired ad. */
-    private long loadTime = 0;
+      /** The timeout fired first; the load keeps running and caches its ad. */
+      @Override
+      public void run() {
+        load.removeListener(this);
+        result.set(AdResult.timedOut());
+      }
+    }
 
-    /** Constructor. */
-    public AppOpenAdManager() {}
+    /** Complete the future shared by every caller waiting for the in-flight load. */
+    private void notifyLoadAdComplete(boolean loaded) {
+      SettableFuture<Boolean> load = pendingLoad;
+      pendingLoad = null;
+      if (load != null) {
+        load.set(loaded);
+      }
+    }
 
     /**
-     * Load an ad.
+     * Top up the pool without a caller waiting, if the user is in the app or likely back within
+     * the preload lead time and the prefetch policy allows it right now. Loads that a caller is
+     * waiting for, e.g. at show time, use {@link #loadAd(Context)} directly.
+     */
+    private void prefetch() {
+      if (stateMachine.isLoading() || adPool.isFull(scheduler.now())) {
+        return;
+      }
+      // In the background, only load when the user is likely back soon; the predicted preload
+      // loads later returns just in time instead of holding an ad for hours.
+      if (!foregroundPredictor.isReturnLikely(scheduler.currentTimeMillis(), PRELOAD_LEAD_MILLIS)) {
+        metrics.recordPrefetchUnlikely();
+        return;
+      }
+      fillPool();
+    }
+
+    /** Top up the pool if the prefetch policy allows it, whatever the predicted return. */
+    private void fillPool() {
+      if (stateMachine.isLoading() || adPool.isFull(scheduler.now())) {
+        return;
+      }
+      if (isPrefetchAllowed(adPool.size(scheduler.now()))) {
+        loadAd(getApplicationContext());
+      }
+    }
+
+    /**
+     * Ask the prefetch policy and record its decision.
+     *
+     * @param cachedAdCount the number of valid ads that stay in the pool
+     */
+    private boolean isPrefetchAllowed(int cachedAdCount) {
+      PrefetchPolicy.Decision decision = prefetchPolicy.decide(cachedAdCount);
+      metrics.recordPrefetchDecision(decision);
+      isPrefetchDeferred = decision == PrefetchPolicy.Decision.DEFER;
+      if (decision != PrefetchPolicy.Decision.PREFETCH) {
+        Log.d(LOG_TAG, "Prefetch decision: " + decision);
+      }
+      return decision == PrefetchPolicy.Decision.PREFETCH;
+    }
+
+    /**
+     * Load an ad into the next free pool slot. Once it has loaded, the next free slot is filled in
+     * the background until the pool is full.
      *
      * @param context the context of the activity that loads the ad
      */
     private void loadAd(Context context) {
-      // Do not load ad if there is an unused ad or one is already loading.
-      if (isLoadingAd || isAdAvailable()) {
+      // Do not load ad before the SDK is initialized, or if every pool slot holds an unused ad, one
+      // is already loading, a retry is backing off or cached ads were just released to free memory.
+      if (!isSdkInitialized
+          || isReleasedForMemory
+          || retryScheduler.isRetryPending()
+          || adPool.isFull(scheduler.now())) {
+        return;
+      }
+      startLoad(context);
+    }
+
+    /**
+     * Request an ad unless one is already loading. When the pool is full, the new ad replaces the
+     * oldest one.
+     *
+     * @param context the context of the activity that loads the ad
+     */
+    private void startLoad(Context context) {
+      if (!stateMachine.tryBeginLoad()) {
         return;
       }
+      loadStartTime = scheduler.now();
+      AdTrace.beginSlice(AdTrace.Slice.AD_LOAD);
+      metrics.recordLoadRequested();
+      eventLog.record(AdEventLog.Type.LOAD_STARTED, 0, loadStartTime);
 
-      isLoadingAd = true;
-      AdRequest request = new AdRequest.Builder().build();
-      AppOpenAd.load(
+      adLoader.load(
           context,
-          AD_UNIT_ID,
-          request,
-          new AppOpenAdLoadCallback() {
+          new MultiUnitAdLoader.Callback() {
             /**
              * Called when an app open ad has loaded.
              *
              * @param ad the loaded app open ad.
              */
             @Override
-            public void onAdLoaded(@NonNull AppOpenAd ad) {
-              appOpenAd = ad;
-              isLoadingAd = false;
+            public void onAdLoaded(@NonNull ShowableAd ad) {
+              AdTrace.endSlice(AdTrace.Slice.AD_LOAD);
+              metrics.recordLoadFilled(scheduler.now() - loadStartTime);
+              adPool.offer(ad, scheduler.now());
+              // Still loading until the other units settle, so no new round overlaps this one.
+              stateMachine.onAdCached();
+              retryScheduler.onLoadSucceeded();
+              scheduleRefresh();
 
+              Log.d(LOG_TAG, "onAdLoaded.");
+              eventLog.record(AdEventLog.Type.AD_LOADED, 0, scheduler.now());
+              notifyLoadAdComplete(true);
+            }
 
-              loadTime = (new Date()).getTime();
+            /**
+             * Called when another ad unit filled after the first one.
+             *
+             * @param ad the loaded app open ad.
+             */
+            @Override
+            public void onExtraAdLoaded(@NonNull ShowableAd ad) {
+              // Pool the extra fill if there is room, otherwise release it.
+              if (adPool.isFull(scheduler.now())) {
+                Log.d(LOG_TAG, "onExtraAdLoaded: pool is full, releasing the ad.");
+                return;
+              }
+              adPool.offer(ad, scheduler.now());
+              stateMachine.onAdCached();
+              scheduleRefresh();
+              Log.d(LOG_TAG, "onExtraAdLoaded.");
+              eventLog.record(AdEventLog.Type.AD_LOADED, 0, scheduler.now());
+            }
 
-              Log.d(LOG_TAG, "onAdLoaded.");
-              Toast.makeText(context, "onAdLoaded", Toast.LENGTH_SHORT).show();
-              willShow = true;
+            /** Called once the extra fills of the load have arrived or timed out. */
+            @Override
+            public void onLoadSettled() {
+              stateMachine.onLoadFinished(adPool.hasAd(scheduler.now()));
+              // Keep filling the pool with the application context so no activity is retained.
+              prefetch();
             }
 
             /**
              * Called when an app open ad has failed to load.
              *
-             * @param loadAdError the error.
+             * @param errorCode the error code.
+             * @param message the error message.
              */
             @Override
-            public void onAdFailedToLoad(@NonNull LoadAdError loadAdError) {
-              isLoadingAd = false;
-              Log.d(LOG_TAG, "onAdFailedToLoad: " + loadAdError.getMessage());
-              Toast.makeText(context, "onAdFailedToLoad", Toast.LENGTH_SHORT).show();
-              willShow = false;
+            public void onAdFailedToLoad(int errorCode, @NonNull String message) {
+              AdTrace.endSlice(AdTrace.Slice.AD_LOAD);
+              metrics.recordLoadFailed(scheduler.now() - loadStartTime);
+              stateMachine.onLoadFinished(adPool.hasAd(scheduler.now()));
+              Log.d(LOG_TAG, "onAdFailedToLoad: " + message);
+              eventLog.record(AdEventLog.Type.AD_FAILED_TO_LOAD, errorCode, scheduler.now());
+              notifyLoadAdComplete(false);
+
+              retryScheduler.onLoadFailed(errorCode, this::retry);
+            }
+
+            /** Retry the failed load, bypassing the prefetch policy if a caller is waiting. */
+            private void retry() {
+              if (!googleMobileAdsConsentManager.canRequestAds()) {
+                notifyLoadAdComplete(false);
+              } else if (pendingLoad != null) {
+                joinLoad(getApplicationContext());
+              } else {
+                prefetch();
+              }
             }
           });
     }
 
-    /** Check if ad was loaded more than n hours ago. */
-    private boolean wasLoadTimeLessThanNHoursAgo() {
-      long dateDifference = (new Date()).getTime() - loadTime;
-      long numMilliSecondsPerHour = 3600000;
-      return (dateDifference < (numMilliSecondsPerHour * (long) 4));
+    /**
+     * Schedule the replacement of the oldest cached ad shortly before its TTL, so the cached ad is
+     * still valid when the app next comes to the foreground.
+     */
+    private void scheduleRefresh() {
+      if (pendingRefresh != null) {
+        pendingRefresh.cancel();
+        pendingRefresh = null;
+      }
+      long now = scheduler.now();
+      long oldestLoadTime = adPool.oldestLoadTimeMillis(now);
+      if (oldestLoadTime < 0) {
+        return;
+      }
+      long delay = Math.max(0, oldestLoadTime + AD_TTL_MILLIS - AD_REFRESH_MARGIN_MILLIS - now);
+      pendingRefresh = scheduler.schedule(refreshTask, delay);
     }
 
-    /** Check if ad exists and can be shown. */
-    private boolean isAdAvailable() {
-      // Ad references in the app open beta will time out after four hours, but this time limit
-      // may change in future beta versions. For details, see:
-      // https://support.google.com/admob/answer/9341964?hl=en
-      willShow = true;
-      return appOpenAd != null && wasLoadTimeLessThanNHoursAgo();
+    /** Replace the oldest cached ad in the background if it is about to expire. */
+    private void refreshExpiringAd() {
+      pendingRefresh = null;
+      long now = scheduler.now();
+      long oldestLoadTime = adPool.oldestLoadTimeMillis(now);
+      if (oldestLoadTime < 0) {
+        return;
+      }
+      if (now - oldestLoadTime < AD_TTL_MILLIS - AD_REFRESH_MARGIN_MILLIS) {
+        scheduleRefresh();
+        return;
+      }
+      if (stateMachine.isLoading() || !googleMobileAdsConsentManager.canRequestAds()) {
+        // The in-flight load or the next foreground reschedules the refresh.
+        return;
+      }
+      // The replacement would live for a full TTL; skip it if nobody is likely to see it.
+      if (!foregroundPredictor.isReturnLikely(scheduler.currentTimeMillis(), AD_TTL_MILLIS)) {
+        Log.d(LOG_TAG, "Not refreshing the expiring ad, a return is unlikely.");
+        metrics.recordRefreshSkipped();
+        return;
+      }
+      // The expiring ad is about to be replaced, so it does not count as cached.
+      if (!isPrefetchAllowed(adPool.size(scheduler.now()) - 1)) {
+        return;
+      }
+      Log.d(LOG_TAG, "Refreshing an ad that is about to expire.");
+      startLoad(getApplicationContext());
+    }
+
+    /**
+     * Schedule a load shortly before the user is predicted to return, so the ad is fresh when they
+     * come back and no ad is held in the background when they don't. This is a single timer, not a
+     * poll: if the process is frozen or killed in the meantime it fires late or never, and the
+     * next foreground loads on demand instead.
+     */
+    private void schedulePredictedPreload() {
+      cancelPredictedPreload();
+      if (!foregroundPredictor.isTrained()
+          || adPool.hasAd(scheduler.now())
+          || stateMachine.isLoading()
+          || !googleMobileAdsConsentManager.canRequestAds()) {
+        return;
+      }
+      long delay =
+          foregroundPredictor.millisUntilLikelyReturn(
+              scheduler.currentTimeMillis(), PRELOAD_LEAD_MILLIS, PRELOAD_HORIZON_MILLIS);
+      if (delay >= 0) {
+        pendingPreload = scheduler.schedule(preloadTask, delay);
+      }
+    }
 
+    private void cancelPredictedPreload() {
+      if (pendingPreload != null) {
+        pendingPreload.cancel();
+        pendingPreload = null;
+      }
+    }
+
+    /** Load an ad ahead of the predicted return, unless one is already cached or on its way. */
+    private void runPredictedPreload() {
+      pendingPreload = null;
+      if (isReleasedForMemory
+          || adPool.hasAd(scheduler.now())
+          || stateMachine.isLoading()
+          || !googleMobileAdsConsentManager.canRequestAds()) {
+        return;
+      }
+      Log.d(LOG_TAG, "A return is likely soon, preloading an ad.");
+      metrics.recordPredictedPreload();
+      fillPool();
+    }
+
+    /** Check if the frequency cap allows an impression now. */
+    private boolean isWithinFrequencyCap() {
+      return !isFrequencyCapEnabled || frequencyCap.canShow(scheduler.currentTimeMillis());
+    }
+
+    /** Check if the pool holds an ad that has not expired and can be shown. */
+    private boolean isAdAvailable() {
+      boolean hasAd = adPool.hasAd(scheduler.now());
+      if (!hasAd) {
+        stateMachine.onAdsExpired();
+      }
+      return hasAd;
     }
 
     /**
@@ -298,7 +952,6 @@ public class MyApplication extends Application
             @Override
             public void onShowAdComplete() {
               // Empty because the user will go back to the activity that shows the ad.
-              willShow = false;
             }
           });
     }
@@ -309,94 +962,106 @@ public class MyApplication extends Application
      * @param activity the activity that shows the app open ad
      * @param onShowAdCompleteListener the listener to be notified when an app open ad is complete
      */
-    private void showAdIfAvailable(
+    void showAdIfAvailable(
         @NonNull final Activity activity,
         @NonNull OnShowAdCompleteListener onShowAdCompleteListener) {
-//      willShow = true;
+      // Only the first attempt after a foreground measures time to show; a skipped, capped or
+      // missed attempt must not leave the timestamp behind for a later show.
+      final long showForegroundTime = foregroundTime;
+      foregroundTime = -1;
+
       // If the app open ad is already showing, do not show the ad again.
-      if (isShowingAd) {
+      if (stateMachine.getState() == AdStateMachine.State.SHOWING) {
         Log.d(LOG_TAG, "The app open ad is already showing.");
         return;
       }
+      metrics.recordShowOpportunity();
+
+      // Keep the cached ad for a later opportunity if showing it now would exceed the cap.
+      if (!isWithinFrequencyCap()) {
+        Log.d(LOG_TAG, "The app open ad is frequency capped.");
+        metrics.recordShowCapped();
+        onShowAdCompleteListener.onShowAdComplete();
+        return;
+      }
 
       // If the app open ad is not available yet, invoke the callback then load the ad.
-      if (!isAdAvailable()) {
+      ShowableAd appOpenAd = null;
+      if (isAdAvailable() && stateMachine.tryBeginShow()) {
+        appOpenAd = adPool.poll(scheduler.now());
+        if (appOpenAd == null) {
+          stateMachine.onShowFinished(false);
+        }
+      }
+      if (appOpenAd == null) {
         Log.d(LOG_TAG, "The app open ad is not ready yet.");
 
         onShowAdCompleteListener.onShowAdComplete();
         if (googleMobileAdsConsentManager.canRequestAds()) {
-          loadAd(currentActivity);
+          loadAd(getApplicationContext());
         }
         return;
       }
 
       Log.d(LOG_TAG, "Will show ad.");
+      metrics.recordShowStarted();
+      AdTrace.beginSlice(AdTrace.Slice.AD_SHOW);
 
-      appOpenAd.setFullScreenContentCallback(
-          new FullScreenContentCallback() {
+      appOpenAd.show(
+          activity,
+          new ShowableAd.ShowCallback() {
             /** Called when full screen content is dismissed.*/
             @Override
-            public void onAdDismissedFullScreenContent() {
-              // Set the reference to null so isAdAvailable() returns false.
+            public void onAdDismissed() {
+              adDismissedListeners.dispatch(OnAdDismissedListener::onAdDismissed);
 
-              if (adDismissedListener != null) {
-                adDismissedListener.onAdDismissed();
+              metrics.recordDismissed();
+              stateMachine.onShowFinished(adPool.hasAd(scheduler.now()));
 
-                appOpenAd = null;
-                isShowingAd = false;
-                isShown = false;
-                willShow = false;
-//              mainActivity.fullScreenDialog.dismiss();
+              Log.d(LOG_TAG, "onAdDismissedFullScreenContent.");
+              eventLog.record(AdEventLog.Type.AD_DISMISSED, 0, scheduler.now());
 
-                Log.d(LOG_TAG, "onAdDismissedFullScreenContent.");
-              Toast.makeText(activity, "onAdDismissedFullScreenContent", Toast.LENGTH_SHORT).show();
-
-                onShowAdCompleteListener.onShowAdComplete();
-                if (googleMobileAdsConsentManager.canRequestAds()) {
-                  loadAd(activity);
-                }
+              onShowAdCompleteListener.onShowAdComplete();
+              if (googleMobileAdsConsentManager.canRequestAds()) {
+                prefetch();
               }
             }
 
             /** Called when fullscreen content failed to show. */
             @Override
-            public void onAdFailedToShowFullScreenContent(@NonNull AdError adError) {
+            public void onAdFailedToShow(int errorCode, @NonNull String message) {
 
-              if ( adFailedListener!= null)
-              {
-                adFailedListener.OnAdFailed();
-              }
+              adFailedListeners.dispatch(OnAdFailedListener::OnAdFailed);
 
-              appOpenAd = null;
-              isShowingAd = false;
-              isShown = false;
-              willShow = false;
-              if (dialogFragment!= null)
-              {
-                dialogFragment.dismiss();
-              }
+              AdTrace.cancelSlice(AdTrace.Slice.AD_SHOW);
+              metrics.recordShowFailed();
+              stateMachine.onShowFinished(adPool.hasAd(scheduler.now()));
 
-              Log.d(LOG_TAG, "onAdFailedToShowFullScreenContent: " + adError.getMessage());
-              Toast.makeText(activity, "onAdFailedToShowFullScreenContent", Toast.LENGTH_SHORT)
-                  .show();
+              Log.d(LOG_TAG, "onAdFailedToShowFullScreenContent: " + message);
+              eventLog.record(AdEventLog.Type.AD_FAILED_TO_SHOW, errorCode, scheduler.now());
 
               onShowAdCompleteListener.onShowAdComplete();
               if (googleMobileAdsConsentManager.canRequestAds()) {
-                loadAd(activity);
+                prefetch();
               }
             }
 
             /** Called when fullscreen content is shown. */
             @Override
-            public void onAdShowedFullScreenContent() {
+            public void onAdShowed() {
+              AdTrace.endSlice(AdTrace.Slice.AD_SHOW);
+              metrics.recordShowed(
+                  showForegroundTime >= 0 ? scheduler.now() - showForegroundTime : -1);
+              frequencyCap.recordImpression(scheduler.currentTimeMillis());
               Log.d(LOG_TAG, "onAdShowedFullScreenContent.");
-              Toast.makeText(activity, "onAdShowedFullScreenContent", Toast.LENGTH_SHORT).show();
+              eventLog.record(AdEventLog.Type.AD_SHOWED, 0, scheduler.now());
             }
           });
 
-      isShowingAd = true;
-      isShown = true;
-      appOpenAd.show(activity);
+      // Refill the slot that was just handed out while the ad is on screen.
+      if (googleMobileAdsConsentManager.canRequestAds()) {
+        prefetch();
+      }
     }
   }
 }
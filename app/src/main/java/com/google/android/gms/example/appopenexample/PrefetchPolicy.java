@@ -0,0 +1,121 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.os.PowerManager;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Decides whether ads should be prefetched into the pool right now, based on connectivity, Data
+ * Saver, battery saver and thermal state. Loads that a caller is actively waiting for, e.g. at
+ * show time, do not go through this policy.
+ *
+ * <p>Every check reads platform services directly, so the policy can be exercised with Robolectric
+ * shadows of {@link ConnectivityManager} and {@link PowerManager}.
+ */
+final class PrefetchPolicy {
+
+  /** Outcome of a prefetch check. */
+  enum Decision {
+    /** Conditions are good: fill the pool. */
+    PREFETCH,
+    /** A load now would likely fail or hurt the device: skip it and check again later. */
+    DEFER,
+    /** Conserve data and battery: only load when an ad is needed at show time. */
+    ON_DEMAND
+  }
+
+  @Nullable private final ConnectivityManager connectivityManager;
+  @Nullable private final PowerManager powerManager;
+
+  /** Constructor. */
+  PrefetchPolicy(@NonNull Context context) {
+    this.connectivityManager =
+        (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+  }
+
+  /**
+   * Decide whether to prefetch an ad now.
+   *
+   * @param cachedAdCount the number of valid ads already in the pool
+   */
+  @NonNull
+  Decision decide(int cachedAdCount) {
+    if (!isConnected()) {
+      return Decision.DEFER;
+    }
+    int thermalStatus = getThermalStatus();
+    if (thermalStatus >= PowerManager.THERMAL_STATUS_SEVERE) {
+      return Decision.DEFER;
+    }
+    if (thermalStatus >= PowerManager.THERMAL_STATUS_MODERATE
+        || isPowerSaveMode()
+        || isDataSaverEnabled()) {
+      return Decision.ON_DEMAND;
+    }
+    // On metered networks keep a single ad ready rather than filling every pool slot.
+    if (cachedAdCount > 0 && isMetered()) {
+      return Decision.ON_DEMAND;
+    }
+    return Decision.PREFETCH;
+  }
+
+  @SuppressWarnings("deprecation")
+  private boolean isConnected() {
+    if (connectivityManager == null) {
+      return true;
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+      Network network = connectivityManager.getActiveNetwork();
+      NetworkCapabilities capabilities =
+          network == null ? null : connectivityManager.getNetworkCapabilities(network);
+      return capabilities != null
+          && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+    }
+    NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+    return networkInfo != null && networkInfo.isConnected();
+  }
+
+  private boolean isMetered() {
+    return connectivityManager != null && connectivityManager.isActiveNetworkMetered();
+  }
+
+  private boolean isDataSaverEnabled() {
+    return connectivityManager != null
+        && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+        && connectivityManager.getRestrictBackgroundStatus()
+            == ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED;
+  }
+
+  private boolean isPowerSaveMode() {
+    return powerManager != null && powerManager.isPowerSaveMode();
+  }
+
+  private int getThermalStatus() {
+    if (powerManager == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+      return PowerManager.THERMAL_STATUS_NONE;
+    }
+    return powerManager.getCurrentThermalStatus();
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import androidx.annotation.NonNull;
+import com.google.android.gms.ads.AdRequest;
+import java.util.Random;
+
+/**
+ * Schedules retries of failed ad loads with capped exponential backoff and jitter. Transient errors
+ * are retried quickly, no-fill is retried slowly and permanent configuration errors are not retried
+ * at all. Pending retries are paused while the app is in the background and resumed on foreground.
+ *
+ * <p>All methods must be called on the thread the {@link Scheduler} delivers its tasks on.
+ */
+final class RetryScheduler {
+
+  /** Base delay for transient errors such as network failures. */
+  private static final long TRANSIENT_BASE_DELAY_MILLIS = 2000;
+
+  /** Base delay for no-fill, where retrying right away rarely helps. */
+  private static final long NO_FILL_BASE_DELAY_MILLIS = 15000;
+
+  /** Upper bound for any single backoff delay. */
+  private static final long MAX_DELAY_MILLIS = 5 * 60000L;
+
+  /** Highest exponent applied to the base delay, so the shift never overflows. */
+  private static final int MAX_BACKOFF_EXPONENT = 10;
+
+  private final Scheduler scheduler;
+  private final Random random;
+  private final Runnable retryTask = this::runPendingRetry;
+
+  private int attempt;
+  private Runnable pendingRetry;
+  private Scheduler.Cancellable pendingHandle;
+  private long nextRetryAt;
+  private boolean isPaused;
+
+  /**
+   * Constructor.
+   *
+   * @param scheduler the scheduler retries are run on
+   * @param random the source of jitter
+   */
+  RetryScheduler(@NonNull Scheduler scheduler, @NonNull Random random) {
+    this.scheduler = scheduler;
+    this.random = random;
+  }
+
+  /**
+   * Base backoff delay for a load error code, or -1 if the error is permanent and should not be
+   * retried.
+   */
+  static long baseDelayMillis(int errorCode) {
+    switch (errorCode) {
+      case AdRequest.ERROR_CODE_NETWORK_ERROR:
+      case AdRequest.ERROR_CODE_INTERNAL_ERROR:
+        return TRANSIENT_BASE_DELAY_MILLIS;
+      case AdRequest.ERROR_CODE_NO_FILL:
+      case AdRequest.ERROR_CODE_MEDIATION_NO_FILL:
+        return NO_FILL_BASE_DELAY_MILLIS;
+      case AdRequest.ERROR_CODE_INVALID_REQUEST:
+      case AdRequest.ERROR_CODE_APP_ID_MISSING:
+      case AdRequest.ERROR_CODE_INVALID_AD_STRING:
+      case AdRequest.ERROR_CODE_REQUEST_ID_MISMATCH:
+        return -1;
+      default:
+        return TRANSIENT_BASE_DELAY_MILLIS;
+    }
+  }
+
+  /**
+   * Schedule a retry after a failed load.
+   *
+   * @param errorCode the {@code AdRequest.ERROR_CODE_*} the load failed with
+   * @param retry the task that retries the load
+   * @return true if a retry was scheduled, false if the error is permanent
+   */
+  boolean onLoadFailed(int errorCode, @NonNull Runnable retry) {
+    long baseDelay = baseDelayMillis(errorCode);
+    if (baseDelay < 0) {
+      cancel();
+      return false;
+    }
+
+    // Equal jitter: half of the backoff is fixed, the other half is random.
+    long backoff =
+        Math.min(MAX_DELAY_MILLIS, baseDelay << Math.min(attempt, MAX_BACKOFF_EXPONENT));
+    long delay = backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+    attempt++;
+
+    cancelPendingHandle();
+    pendingRetry = retry;
+    nextRetryAt = scheduler.now() + delay;
+    if (!isPaused) {
+      pendingHandle = scheduler.schedule(retryTask, delay);
+    }
+    return true;
+  }
+
+  /** Reset the backoff after a successful load. */
+  void onLoadSucceeded() {
+    attempt = 0;
+    cancel();
+  }
+
+  /** Check if a retry is waiting to run, in which case callers should not load on their own. */
+  boolean isRetryPending() {
+    return pendingRetry != null;
+  }
+
+  /** Number of consecutive failed attempts since the last success. */
+  int getAttempt() {
+    return attempt;
+  }
+
+  /** Hold the pending retry while the app is in the background. */
+  void pause() {
+    isPaused = true;
+    cancelPendingHandle();
+  }
+
+  /** Reschedule the pending retry for whatever is left of its backoff. */
+  void resume() {
+    isPaused = false;
+    if (pendingRetry != null && pendingHandle == null) {
+      long delay = Math.max(0, nextRetryAt - scheduler.now());
+      pendingHandle = scheduler.schedule(retryTask, delay);
+    }
+  }
+
+  /** Drop the pending retry. */
+  void cancel() {
+    cancelPendingHandle();
+    pendingRetry = null;
+  }
+
+  private void runPendingRetry() {
+    Runnable retry = pendingRetry;
+    pendingRetry = null;
+    pendingHandle = null;
+    if (retry != null) {
+      retry.run();
+    }
+  }
+
+  private void cancelPendingHandle() {
+    if (pendingHandle != null) {
+      pendingHandle.cancel();
+      pendingHandle = null;
+    }
+  }
+}
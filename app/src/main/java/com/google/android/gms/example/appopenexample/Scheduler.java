@@ -0,0 +1,113 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Source of time and delayed execution for the ad logic. The app runs on the main looper, while
+ * plain JVM code can drive the same logic from an executor.
+ */
+public interface Scheduler {
+
+  /** Handle to a scheduled task. */
+  interface Cancellable {
+    void cancel();
+  }
+
+  /** Monotonic time in milliseconds. */
+  long now();
+
+  /**
+   * Wall-clock time in milliseconds, for state that has to survive process death and reboots. It
+   * can jump when the device clock is changed.
+   */
+  default long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * Run a task after a delay.
+   *
+   * @param task the task to run
+   * @param delayMillis the delay in milliseconds, 0 to run as soon as possible
+   * @return a handle that cancels the task if it has not run yet
+   */
+  Cancellable schedule(Runnable task, long delayMillis);
+
+  /**
+   * Scheduler that runs tasks on the main thread and reads time from elapsed realtime. Scheduling
+   * the same task again returns the same handle, so tasks kept in a field and rescheduled over and
+   * over, like flushes and retries, only allocate a handle the first time.
+   */
+  static Scheduler mainThread() {
+    final Handler handler = new Handler(Looper.getMainLooper());
+    // The handles only hold their task weakly, so a task that is no longer referenced elsewhere
+    // drops out of the map.
+    final Map<Runnable, Cancellable> handles = new WeakHashMap<>();
+    return new Scheduler() {
+      @Override
+      public long now() {
+        return SystemClock.elapsedRealtime();
+      }
+
+      @Override
+      public Cancellable schedule(Runnable task, long delayMillis) {
+        handler.postDelayed(task, delayMillis);
+        synchronized (handles) {
+          Cancellable handle = handles.get(task);
+          if (handle == null) {
+            // removeCallbacks drops every pending run of the task, so one handle serves them all.
+            final WeakReference<Runnable> taskReference = new WeakReference<>(task);
+            handle =
+                () -> {
+                  Runnable scheduledTask = taskReference.get();
+                  if (scheduledTask != null) {
+                    handler.removeCallbacks(scheduledTask);
+                  }
+                };
+            handles.put(task, handle);
+          }
+          return handle;
+        }
+      }
+    };
+  }
+
+  /** Scheduler backed by an executor, for use off the main looper (e.g. in JVM tests). */
+  static Scheduler fromExecutor(final ScheduledExecutorService executor) {
+    return new Scheduler() {
+      @Override
+      public long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+      }
+
+      @Override
+      public Cancellable schedule(Runnable task, long delayMillis) {
+        ScheduledFuture<?> future = executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        return () -> future.cancel(false);
+      }
+    };
+  }
+}
@@ -15,23 +15,26 @@ public class SecondActivity extends AppCompatActivity {
 
     Button showAd;
     MyApplication myApplication;
-    FullScreenDialogFragment fullScreenDialog;
+    AdCoverOverlay adCover;
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_second);
+        adCover = new AdCoverOverlay(this);
 
-        myApplication = new MyApplication();
+        myApplication = (MyApplication) getApplication();
+        myApplication.getAdState().observe(this, state -> {
+            if (state == AdStateMachine.State.SHOWING) {
+                adCover.show();
+            } else {
+                adCover.hide();
+            }
+        });
         showAd = findViewById(R.id.showAd);
         showAd.setOnClickListener(new View.OnClickListener() {
 
             @Override
             public void onClick(View v) {
-                if (myApplication.willShow)
-                {
-                    fullScreenDialog = new FullScreenDialogFragment();
-                    fullScreenDialog.show(getSupportFragmentManager(), "FullScreenDialogFragment");
-                }
                 Application application = getApplication();
                 ((MyApplication) application)
                         .showAdIfAvailable(
@@ -39,16 +42,15 @@ public class SecondActivity extends AppCompatActivity {
                                 () -> {
                                     Intent intent = new Intent(SecondActivity.this, MainActivity.class);
                                     startActivity(intent);
-                                    fullScreenDialog.dismiss();
-                                    myApplication.willShow = false;
+                                    adCover.hide();
                                 });
             }
         });
     }
 
     @Override
-    public void onBackPressed() {
-        MainActivity.isFromSecond = true;
-        super.onBackPressed();
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        adCover.onTrimMemory(level);
     }
 }
\ No newline at end of file
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Times the app's trips to the background so a return can be checked for show eligibility in
+ * constant time. Recent background durations are kept in a fixed ring of primitives, and the
+ * number of short switches among them is maintained as entries come and go, so neither recording
+ * nor checking allocates or scans.
+ *
+ * <p>The first foreground of the process is a cold start and always eligible. A warm return is
+ * only eligible once the app spent at least the minimum time in the background, so a quick trip to
+ * a permission dialog or the share sheet does not cost an impression.
+ *
+ * <p>All methods must be called on the main thread.
+ */
+final class SessionTimer {
+
+  private final long minBackgroundMillis;
+
+  /** Background durations in chronological order, starting at {@code (head - count)}. */
+  private final long[] backgroundDurations;
+
+  private int head;
+  private int count;
+  private int shortCount;
+
+  private boolean hasStarted;
+  private boolean isColdStart;
+  private long backgroundSinceMillis = -1;
+  private long lastBackgroundMillis = -1;
+
+  /**
+   * Constructor.
+   *
+   * @param minBackgroundMillis the minimum time in the background for a warm return to be eligible
+   * @param capacity the number of recent background durations kept
+   */
+  SessionTimer(long minBackgroundMillis, int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.minBackgroundMillis = minBackgroundMillis;
+    this.backgroundDurations = new long[capacity];
+  }
+
+  /** Record that the app came to the foreground. */
+  void onForeground(long nowMillis) {
+    isColdStart = !hasStarted;
+    hasStarted = true;
+    if (backgroundSinceMillis >= 0) {
+      lastBackgroundMillis = Math.max(0, nowMillis - backgroundSinceMillis);
+      append(lastBackgroundMillis);
+      backgroundSinceMillis = -1;
+    } else {
+      lastBackgroundMillis = -1;
+    }
+  }
+
+  /** Record that the app moved to the background. */
+  void onBackground(long nowMillis) {
+    backgroundSinceMillis = nowMillis;
+  }
+
+  /** Check if the current foreground is the first one of the process. */
+  boolean isColdStart() {
+    return isColdStart;
+  }
+
+  /** Time spent in the background before the current foreground, or -1 on a cold start. */
+  long getLastBackgroundMillis() {
+    return lastBackgroundMillis;
+  }
+
+  /** Check if the current foreground may show an app open ad. */
+  boolean isShowEligible() {
+    return isColdStart || lastBackgroundMillis >= minBackgroundMillis;
+  }
+
+  /** Human-readable summary of the recent background durations for logging. */
+  @NonNull
+  String getStatsSummary() {
+    return "returns=" + count + " shortSwitches=" + shortCount + " lastBackgroundMs="
+        + lastBackgroundMillis;
+  }
+
+  private void append(long durationMillis) {
+    if (count == backgroundDurations.length) {
+      // The slot at head holds the oldest duration, which is about to be overwritten.
+      if (backgroundDurations[head] < minBackgroundMillis) {
+        shortCount--;
+      }
+    } else {
+      count++;
+    }
+    backgroundDurations[head] = durationMillis;
+    if (durationMillis < minBackgroundMillis) {
+      shortCount++;
+    }
+    head = (head + 1) % backgroundDurations.length;
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Minimal {@link Future} whose value is set explicitly, with completion listeners. Used instead of
+ * {@code CompletableFuture}, which is not available on every API level this app supports.
+ *
+ * @param <T> the type of the value
+ */
+public final class SettableFuture<T> implements Future<T> {
+
+  /** Interface definition for a callback to be invoked when the future completes. */
+  public interface Listener<T> {
+    /**
+     * Called once when the future completes.
+     *
+     * @param value the value, or null if the future was cancelled
+     */
+    void onComplete(@Nullable T value);
+  }
+
+  private final CountDownLatch latch = new CountDownLatch(1);
+  private final List<Listener<T>> listeners = new ArrayList<>();
+  private T value;
+  private boolean isDone;
+  private boolean isCancelled;
+
+  /**
+   * Complete the future with a value. Listeners are notified on the calling thread.
+   *
+   * @return false if the future was already complete
+   */
+  boolean set(@Nullable T value) {
+    return complete(value, false);
+  }
+
+  /**
+   * Add a listener. If the future is already complete the listener is notified right away on the
+   * calling thread, otherwise on the thread that completes the future.
+   */
+  public void addListener(@NonNull Listener<T> listener) {
+    T completedValue;
+    synchronized (this) {
+      if (!isDone) {
+        listeners.add(listener);
+        return;
+      }
+      completedValue = value;
+    }
+    listener.onComplete(completedValue);
+  }
+
+  /** Remove a listener that has not been notified yet. */
+  public synchronized void removeListener(@NonNull Listener<T> listener) {
+    listeners.remove(listener);
+  }
+
+  /** Return the value if the future has completed, or null otherwise. */
+  @Nullable
+  public synchronized T getNow() {
+    return value;
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    return complete(null, true);
+  }
+
+  @Override
+  public synchronized boolean isCancelled() {
+    return isCancelled;
+  }
+
+  @Override
+  public synchronized boolean isDone() {
+    return isDone;
+  }
+
+  @Override
+  public T get() throws InterruptedException {
+    latch.await();
+    return result();
+  }
+
+  @Override
+  public T get(long timeout, @NonNull TimeUnit unit)
+      throws InterruptedException, TimeoutException {
+    if (!latch.await(timeout, unit)) {
+      throw new TimeoutException("Timed out after " + unit.toMillis(timeout) + " ms");
+    }
+    return result();
+  }
+
+  private synchronized T result() {
+    if (isCancelled) {
+      throw new CancellationException();
+    }
+    return value;
+  }
+
+  private boolean complete(@Nullable T value, boolean cancelled) {
+    List<Listener<T>> toNotify;
+    synchronized (this) {
+      if (isDone) {
+        return false;
+      }
+      this.value = value;
+      this.isCancelled = cancelled;
+      this.isDone = true;
+      toNotify = new ArrayList<>(listeners);
+      listeners.clear();
+    }
+    latch.countDown();
+    for (Listener<T> listener : toNotify) {
+      listener.onComplete(value);
+    }
+    return true;
+  }
+}
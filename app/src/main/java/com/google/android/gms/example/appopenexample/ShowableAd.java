@@ -0,0 +1,47 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.app.Activity;
+import androidx.annotation.NonNull;
+
+/** A loaded app open ad that can be shown once. */
+public interface ShowableAd {
+
+  /** Interface definition for callbacks to be invoked while the ad is on screen. */
+  interface ShowCallback {
+    /** Called when full screen content is shown. */
+    void onAdShowed();
+
+    /** Called when full screen content is dismissed. */
+    void onAdDismissed();
+
+    /** Called when full screen content failed to show. */
+    void onAdFailedToShow(int errorCode, @NonNull String message);
+  }
+
+  /** The ad unit this ad was loaded from. */
+  @NonNull
+  String getAdUnitId();
+
+  /**
+   * Show the ad.
+   *
+   * @param activity the activity that shows the ad
+   * @param callback the callback to be notified while the ad is on screen
+   */
+  void show(@NonNull Activity activity, @NonNull ShowCallback callback);
+}
@@ -16,124 +16,91 @@
 package com.google.android.gms.example.appopenexample;
 
 import android.annotation.SuppressLint;
-import android.app.Application;
 import android.content.Intent;
 import android.os.Bundle;
-import android.os.CountDownTimer;
-import android.util.Log;
 import android.widget.TextView;
 import androidx.appcompat.app.AppCompatActivity;
-import com.google.android.gms.ads.MobileAds;
-import com.google.android.gms.example.appopenexample.MyApplication.OnShowAdCompleteListener;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import com.google.android.gms.example.appopenexample.StartupGate.Stage;
 
 /** Splash Activity that inflates splash activity xml. */
 public class SplashActivity extends AppCompatActivity {
-  private static final String LOG_TAG = "SplashActivity";
-  private final AtomicBoolean isMobileAdsInitializeCalled = new AtomicBoolean(false);
-  private GoogleMobileAdsConsentManager googleMobileAdsConsentManager;
+  /**
+   * Intent extra that overrides {@link #STARTUP_BUDGET_MILLIS}, e.g. to shorten the splash in
+   * benchmarks.
+   */
+  public static final String EXTRA_STARTUP_BUDGET_MILLIS = "startup_budget_millis";
 
   /**
-   * Number of milliseconds to count down before showing the app open ad. This simulates the time
-   * needed to load the app.
+   * Maximum number of milliseconds the splash waits for consent, SDK initialization and the first
+   * ad before moving on to the MainActivity.
    */
-  private static final long COUNTER_TIME_MILLISECONDS = 5000;
+  private static final long STARTUP_BUDGET_MILLIS = 5000;
 
-  private long secondsRemaining;
+  private StartupGate startupGate;
+  private StartupPipeline startupPipeline;
+  private SettableFuture.Listener<StartupPipeline.Result> startupListener;
+  private boolean isMainActivityStarted;
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
+    AdTrace.beginSection("AppOpen:SplashActivity.onCreate");
     super.onCreate(savedInstanceState);
     setContentView(R.layout.activity_splash);
 
-    // Create a timer so the SplashActivity will be displayed for a fixed amount of time.
-    createTimer(COUNTER_TIME_MILLISECONDS);
-
-    googleMobileAdsConsentManager =
-        GoogleMobileAdsConsentManager.getInstance(getApplicationContext());
-    googleMobileAdsConsentManager.gatherConsent(
-        this,
-        consentError -> {
-          if (consentError != null) {
-            // Consent not obtained in current session.
-            Log.w(
-                LOG_TAG,
-                String.format(
-                    "%s: %s", consentError.getErrorCode(), consentError.getMessage()));
-          }
-
-          if (googleMobileAdsConsentManager.canRequestAds()) {
-            initializeMobileAdsSdk();
-          }
+    // Leave the splash as soon as consent and the first ad are ready, bounded by the budget.
+    createStartupGate(getIntent().getLongExtra(EXTRA_STARTUP_BUDGET_MILLIS, STARTUP_BUDGET_MILLIS));
 
-          if (secondsRemaining <= 0) {
-            startMainActivity();
+    // Gather consent and initialize the SDK in parallel, then load the first ad. The pipeline runs
+    // once per process, so a recreated splash only waits for whatever is still outstanding.
+    startupPipeline = ((MyApplication) getApplication()).getStartupPipeline();
+    startupListener =
+        result -> {
+          for (Stage stage : Stage.values()) {
+            startupGate.skip(stage);
           }
-        });
+        };
+    startupPipeline.start(this, startupGate).addListener(startupListener);
+    AdTrace.endSection();
+  }
 
-    // This sample attempts to load ads using consent obtained in the previous session.
-    if (googleMobileAdsConsentManager.canRequestAds()) {
-      initializeMobileAdsSdk();
-    }
+  @Override
+  protected void onDestroy() {
+    startupPipeline.removeStageListener(startupGate);
+    startupPipeline.getCompletion().removeListener(startupListener);
+    startupGate.cancel();
+    super.onDestroy();
   }
 
   /**
-   * Create the countdown timer, which counts down to zero and show the app open ad.
+   * Create the startup gate, which starts the MainActivity once every startup stage is done or the
+   * budget runs out.
    *
-   * @param time the number of milliseconds that the timer counts down from
+   * @param budgetMillis the maximum number of milliseconds to stay on the splash
    */
-  private void createTimer(long time) {
+  private void createStartupGate(long budgetMillis) {
     final TextView counterTextView = findViewById(R.id.timer);
 
-    CountDownTimer countDownTimer =
-        new CountDownTimer(time, 1000) {
-          @SuppressLint("SetTextI18n")
-          @Override
-          public void onTick(long millisUntilFinished) {
-            secondsRemaining = TimeUnit.MILLISECONDS.toSeconds(millisUntilFinished) + 1;
-            counterTextView.setText("App is done loading in: " + secondsRemaining);
-          }
-
-          @SuppressLint("SetTextI18n")
-          @Override
-          public void onFinish() {
-            secondsRemaining = 0;
-            counterTextView.setText("Done.");
-              startMainActivity();
-
-//            Application application = getApplication();
-//            ((MyApplication) application)
-//                .showAdIfAvailable(
-//                    SplashActivity.this,
-//                        () -> {
-//                          // Check if the consent form is currently on screen before moving to the
-//                          // main
-//                          // activity.
-//  //                        if (googleMobileAdsConsentManager.canRequestAds()) {
-//                            startMainActivity();
-//  //                        }
-//                        });
-          }
-        };
-    countDownTimer.start();
-  }
-
-  private void initializeMobileAdsSdk() {
-    if (isMobileAdsInitializeCalled.getAndSet(true)) {
-      return;
-    }
-
-    // Initialize the Mobile Ads SDK.
-    MobileAds.initialize(this);
-
-    // Load an ad.
-    Application application = getApplication();
-    ((MyApplication) application).loadAd(this);
+    startupGate =
+        new StartupGate(
+            Scheduler.mainThread(),
+            budgetMillis,
+            new StartupGate.OnOpenListener() {
+              @SuppressLint("SetTextI18n")
+              @Override
+              public void onOpen(boolean timedOut) {
+                counterTextView.setText("Done.");
+                startMainActivity();
+              }
+            });
+    startupGate.start();
   }
 
   /** Start the MainActivity. */
   public void startMainActivity() {
+    if (isMainActivityStarted) {
+      return;
+    }
+    isMainActivityStarted = true;
     Intent intent = new Intent(this, MainActivity.class);
     this.startActivity(intent);
   }
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+
+/**
+ * Tracks the stages the splash screen waits on and opens as soon as every stage has completed (or
+ * been skipped), or when the startup budget runs out, whichever comes first. The duration of each
+ * stage is recorded so the real critical path of a cold start can be inspected.
+ *
+ * <p>All methods must be called on the thread the {@link Scheduler} delivers its tasks on.
+ */
+final class StartupGate implements StartupPipeline.StageListener {
+
+  private static final String LOG_TAG = "StartupGate";
+
+  /** Stages of the startup critical path. */
+  enum Stage {
+    CONSENT,
+    SDK_INIT,
+    FIRST_AD_LOAD
+  }
+
+  /** Interface definition for a callback to be invoked when the gate opens. */
+  interface OnOpenListener {
+    /**
+     * Called once when the gate opens.
+     *
+     * @param timedOut true if the startup budget ran out before every stage completed
+     */
+    void onOpen(boolean timedOut);
+  }
+
+  private static final int STAGE_COUNT = Stage.values().length;
+
+  private final Scheduler scheduler;
+  private final long budgetMillis;
+  private final OnOpenListener onOpenListener;
+
+  private final long[] beginTimes = new long[STAGE_COUNT];
+  private final long[] durations = new long[STAGE_COUNT];
+  private final boolean[] done = new boolean[STAGE_COUNT];
+  private int remaining = STAGE_COUNT;
+
+  private long startTime;
+  private long openDuration = -1;
+  private Scheduler.Cancellable deadline;
+
+  /**
+   * Constructor.
+   *
+   * @param scheduler the scheduler used to read time and enforce the budget
+   * @param budgetMillis the hard cap on how long the gate stays closed
+   * @param onOpenListener the listener to be notified when the gate opens
+   */
+  StartupGate(
+      @NonNull Scheduler scheduler, long budgetMillis, @NonNull OnOpenListener onOpenListener) {
+    this.scheduler = scheduler;
+    this.budgetMillis = budgetMillis;
+    this.onOpenListener = onOpenListener;
+    for (int i = 0; i < STAGE_COUNT; i++) {
+      beginTimes[i] = -1;
+      durations[i] = -1;
+    }
+  }
+
+  /** Start the startup budget countdown. */
+  void start() {
+    startTime = scheduler.now();
+    deadline = scheduler.schedule(() -> open(true), budgetMillis);
+  }
+
+  /** Mark the beginning of a stage. */
+  @Override
+  public void begin(@NonNull Stage stage) {
+    beginTimes[stage.ordinal()] = scheduler.now();
+  }
+
+  /** Mark a stage as complete and record its duration. */
+  @Override
+  public void complete(@NonNull Stage stage) {
+    int index = stage.ordinal();
+    if (done[index]) {
+      return;
+    }
+    long beginTime = beginTimes[index] >= 0 ? beginTimes[index] : startTime;
+    durations[index] = scheduler.now() - beginTime;
+    markDone(index);
+  }
+
+  /** Mark a stage as not needed for this start, e.g. ads cannot be requested. */
+  @Override
+  public void skip(@NonNull Stage stage) {
+    int index = stage.ordinal();
+    if (!done[index]) {
+      markDone(index);
+    }
+  }
+
+  /** Check if the stage has completed or been skipped. */
+  boolean isDone(@NonNull Stage stage) {
+    return done[stage.ordinal()];
+  }
+
+  /** Duration of a completed stage in milliseconds, or -1 if it did not complete. */
+  long getDurationMillis(@NonNull Stage stage) {
+    return durations[stage.ordinal()];
+  }
+
+  /** Time from {@link #start()} until the gate opened, or -1 if it is still closed. */
+  long getOpenDurationMillis() {
+    return openDuration;
+  }
+
+  /** Stop waiting without notifying the listener, e.g. when the activity is destroyed. */
+  void cancel() {
+    if (deadline != null) {
+      deadline.cancel();
+      deadline = null;
+    }
+    if (openDuration < 0) {
+      openDuration = scheduler.now() - startTime;
+    }
+  }
+
+  private void markDone(int index) {
+    done[index] = true;
+    remaining--;
+    if (remaining == 0) {
+      open(false);
+    }
+  }
+
+  private void open(boolean timedOut) {
+    if (openDuration >= 0) {
+      return;
+    }
+    openDuration = scheduler.now() - startTime;
+    if (deadline != null) {
+      deadline.cancel();
+      deadline = null;
+    }
+    Log.d(
+        LOG_TAG,
+        String.format(
+            "Opened after %d ms (timedOut=%b): consent=%d ms, sdkInit=%d ms, firstAdLoad=%d ms",
+            openDuration,
+            timedOut,
+            getDurationMillis(Stage.CONSENT),
+            getDurationMillis(Stage.SDK_INIT),
+            getDurationMillis(Stage.FIRST_AD_LOAD)));
+    onOpenListener.onOpen(timedOut);
+  }
+}
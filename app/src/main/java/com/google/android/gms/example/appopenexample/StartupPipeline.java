@@ -0,0 +1,241 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.app.Activity;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.android.gms.ads.MobileAds;
+import com.google.android.gms.example.appopenexample.StartupGate.Stage;
+import java.util.concurrent.Executor;
+
+/**
+ * Process-wide startup pipeline. Consent is gathered on the main thread while the Mobile Ads SDK
+ * initializes on a background executor, and the first ad request is only issued once both have
+ * finished. The whole pipeline runs at most once per process and completes a single future.
+ *
+ * <p>{@link #start} must be called on the main thread.
+ */
+final class StartupPipeline {
+
+  private static final String LOG_TAG = "StartupPipeline";
+
+  /** Interface definition for callbacks to be invoked as startup stages progress. */
+  interface StageListener {
+    void begin(@NonNull Stage stage);
+
+    void complete(@NonNull Stage stage);
+
+    void skip(@NonNull Stage stage);
+  }
+
+  /** Outcome of the startup pipeline. */
+  static final class Result {
+    /** Whether consent allows ads to be requested in this session. */
+    final boolean canRequestAds;
+
+    /** Whether the first ad request returned an ad. */
+    final boolean isAdLoaded;
+
+    Result(boolean canRequestAds, boolean isAdLoaded) {
+      this.canRequestAds = canRequestAds;
+      this.isAdLoaded = isAdLoaded;
+    }
+  }
+
+  private final MyApplication application;
+  private final Executor backgroundExecutor;
+  private final Scheduler mainScheduler;
+  private final boolean isMobileAdsSdkEnabled;
+  private final SettableFuture<Result> completion = new SettableFuture<>();
+
+  @Nullable private StageListener stageListener;
+  private boolean isStarted;
+  private boolean isConsentGathered;
+  private boolean isSdkInitializeCalled;
+  private boolean isSdkInitialized;
+  private boolean isFirstAdRequested;
+
+  /**
+   * Constructor.
+   *
+   * @param application the application that loads the first ad
+   * @param backgroundExecutor the executor the Mobile Ads SDK is initialized on
+   * @param mainScheduler the scheduler that runs tasks on the main thread
+   * @param isMobileAdsSdkEnabled false to skip SDK initialization, e.g. when ads come from {@link
+   *     FakeAdLoader}
+   */
+  StartupPipeline(
+      @NonNull MyApplication application,
+      @NonNull Executor backgroundExecutor,
+      @NonNull Scheduler mainScheduler,
+      boolean isMobileAdsSdkEnabled) {
+    this.application = application;
+    this.backgroundExecutor = backgroundExecutor;
+    this.mainScheduler = mainScheduler;
+    this.isMobileAdsSdkEnabled = isMobileAdsSdkEnabled;
+  }
+
+  /** Check if {@link #start} was called in this process. */
+  boolean isStarted() {
+    return isStarted;
+  }
+
+  /**
+   * Start the pipeline if it has not been started yet in this process.
+   *
+   * @param activity the activity used to present the consent form
+   * @param stageListener the listener to be notified of stage progress from now on
+   * @return the future that completes when startup has finished
+   */
+  @NonNull
+  SettableFuture<Result> start(@NonNull Activity activity, @Nullable StageListener stageListener) {
+    this.stageListener = stageListener;
+    if (isStarted) {
+      return completion;
+    }
+    isStarted = true;
+
+    GoogleMobileAdsConsentManager googleMobileAdsConsentManager =
+        GoogleMobileAdsConsentManager.getInstance(application);
+    googleMobileAdsConsentManager.setConsentTtlMillis(BuildConfig.CONSENT_TTL_MILLIS);
+
+    // This sample attempts to use consent obtained in the previous session, in which case the SDK
+    // initializes in parallel with consent gathering.
+    if (googleMobileAdsConsentManager.canRequestAds()) {
+      initializeMobileAdsSdk();
+    }
+
+    begin(Stage.CONSENT);
+    googleMobileAdsConsentManager.gatherConsent(
+        activity,
+        consentError -> {
+          if (consentError != null) {
+            // Consent not obtained in current session.
+            Log.w(
+                LOG_TAG,
+                String.format("%s: %s", consentError.getErrorCode(), consentError.getMessage()));
+          }
+          isConsentGathered = true;
+          complete(Stage.CONSENT);
+
+          if (googleMobileAdsConsentManager.canRequestAds()) {
+            initializeMobileAdsSdk();
+            maybeRequestFirstAd();
+          } else {
+            // No ads will be requested in this session, so there is nothing else to wait for.
+            if (!isSdkInitializeCalled) {
+              skip(Stage.SDK_INIT);
+            }
+            skip(Stage.FIRST_AD_LOAD);
+            completion.set(new Result(false, false));
+          }
+        });
+    return completion;
+  }
+
+  /** Stop notifying the listener, e.g. when the activity that registered it is destroyed. */
+  void removeStageListener(@NonNull StageListener stageListener) {
+    if (this.stageListener == stageListener) {
+      this.stageListener = null;
+    }
+  }
+
+  /** The future that completes when startup has finished. */
+  @NonNull
+  SettableFuture<Result> getCompletion() {
+    return completion;
+  }
+
+  private void initializeMobileAdsSdk() {
+    if (isSdkInitializeCalled) {
+      return;
+    }
+    isSdkInitializeCalled = true;
+
+    if (!isMobileAdsSdkEnabled) {
+      isSdkInitialized = true;
+      application.onMobileAdsSdkInitialized();
+      skip(Stage.SDK_INIT);
+      return;
+    }
+    begin(Stage.SDK_INIT);
+    backgroundExecutor.execute(
+        () ->
+            MobileAds.initialize(
+                application,
+                initializationStatus -> mainScheduler.schedule(this::onSdkInitialized, 0)));
+  }
+
+  private void onSdkInitialized() {
+    isSdkInitialized = true;
+    application.onMobileAdsSdkInitialized();
+    complete(Stage.SDK_INIT);
+    maybeRequestFirstAd();
+  }
+
+  /** Request the first ad once consent has been gathered and the SDK is initialized. */
+  private void maybeRequestFirstAd() {
+    if (isFirstAdRequested || !isConsentGathered || !isSdkInitialized) {
+      return;
+    }
+    if (!GoogleMobileAdsConsentManager.getInstance(application).canRequestAds()) {
+      return;
+    }
+    isFirstAdRequested = true;
+
+    begin(Stage.FIRST_AD_LOAD);
+    application.loadAd(
+        application,
+        loaded -> {
+          complete(Stage.FIRST_AD_LOAD);
+          completion.set(new Result(true, loaded));
+        });
+  }
+
+  private void begin(Stage stage) {
+    AdTrace.beginSlice(sliceOf(stage));
+    if (stageListener != null) {
+      stageListener.begin(stage);
+    }
+  }
+
+  private void complete(Stage stage) {
+    AdTrace.endSlice(sliceOf(stage));
+    if (stageListener != null) {
+      stageListener.complete(stage);
+    }
+  }
+
+  private void skip(Stage stage) {
+    AdTrace.cancelSlice(sliceOf(stage));
+    if (stageListener != null) {
+      stageListener.skip(stage);
+    }
+  }
+
+  private static AdTrace.Slice sliceOf(Stage stage) {
+    switch (stage) {
+      case CONSENT:
+        return AdTrace.Slice.CONSENT;
+      case SDK_INIT:
+        return AdTrace.Slice.SDK_INIT;
+      default:
+        return AdTrace.Slice.FIRST_AD_LOAD;
+    }
+  }
+}
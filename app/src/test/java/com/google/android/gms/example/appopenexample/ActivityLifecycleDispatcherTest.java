@@ -0,0 +1,201 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import static org.junit.Assert.assertEquals;
+
+import android.app.Activity;
+import android.os.Build;
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+import androidx.test.core.app.ApplicationProvider;
+import com.google.android.gms.example.appopenexample.ActivityLifecycleDispatcher.Event;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+/**
+ * Checks that {@link ActivityLifecycleDispatcher} delivers each event type only to its own
+ * subscribers, and that the cost of dispatching an event, the number of listeners it reaches,
+ * stays constant however often activities are recreated.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.TIRAMISU)
+public class ActivityLifecycleDispatcherTest {
+
+  private static final int RECREATIONS = 20;
+
+  private ActivityLifecycleDispatcher dispatcher;
+  private Activity activity;
+
+  @Before
+  public void setUp() {
+    dispatcher = new ActivityLifecycleDispatcher();
+    activity = Robolectric.buildActivity(Activity.class).get();
+  }
+
+  @Test
+  public void recreatingRealActivities_keepsTheDispatchCostConstant() {
+    MyApplication application = ApplicationProvider.getApplicationContext();
+    application.startOfflineProcess(
+        Scheduler.mainThread(),
+        Scheduler.mainThread(),
+        new AdMetrics(),
+        new Random(0),
+        new FakeAdLoader.Builder(Scheduler.mainThread()).build());
+    ActivityLifecycleDispatcher appDispatcher = application.getActivityLifecycleDispatcher();
+    CountingListener starts = new CountingListener();
+    appDispatcher.subscribe(new Scope(), Event.STARTED, starts);
+    int[] baseline = subscriberCounts(appDispatcher);
+
+    for (int i = 0; i < RECREATIONS; i++) {
+      ActivityController<MainActivity> main = Robolectric.buildActivity(MainActivity.class);
+      main.setup().recreate();
+      ActivityController<SecondActivity> second = Robolectric.buildActivity(SecondActivity.class);
+      second.setup().recreate();
+      main.pause().stop().destroy();
+      second.pause().stop().destroy();
+
+      for (Event event : Event.values()) {
+        assertEquals(
+            event.name(),
+            baseline[event.ordinal()],
+            appDispatcher.getSubscriberCount(event));
+      }
+    }
+    // Each of the four activity instances per round started once, and each start reached the
+    // listener exactly once.
+    assertEquals(4 * RECREATIONS, starts.count);
+  }
+
+  @Test
+  public void dispatch_onlyReachesSubscribersOfThatEvent() {
+    CountingListener starts = new CountingListener();
+    CountingListener stops = new CountingListener();
+    dispatcher.subscribe(new Scope(), Event.STARTED, starts);
+    dispatcher.subscribe(new Scope(), Event.STOPPED, stops);
+
+    dispatcher.onActivityStarted(activity);
+    dispatcher.onActivityResumed(activity);
+    dispatcher.onActivityStarted(activity);
+
+    assertEquals(2, starts.count);
+    assertEquals(0, stops.count);
+    assertEquals(0, dispatcher.getSubscriberCount(Event.RESUMED));
+  }
+
+  @Test
+  public void dispatch_repeatedScopedSubscriptions_keepsOneListenerPerScope() {
+    CountingListener application = new CountingListener();
+    dispatcher.subscribe(new Scope(), Event.STARTED, application);
+
+    for (int i = 0; i < RECREATIONS; i++) {
+      // Each recreation subscribes a new listener in a new scope, like a recreated activity.
+      Scope scope = new Scope();
+      CountingListener recreated = new CountingListener();
+      dispatcher.subscribe(scope, Event.STARTED, recreated);
+
+      dispatcher.onActivityStarted(activity);
+
+      assertEquals(1, recreated.count);
+      assertEquals(2, dispatcher.getSubscriberCount(Event.STARTED));
+      scope.destroy();
+    }
+
+    assertEquals(RECREATIONS, application.count);
+    assertEquals(1, dispatcher.getSubscriberCount(Event.STARTED));
+  }
+
+  @Test
+  public void subscribe_sameListenerTwice_dispatchesOnce() {
+    Scope scope = new Scope();
+    CountingListener listener = new CountingListener();
+
+    dispatcher.subscribe(scope, Event.CREATED, listener);
+    dispatcher.subscribe(scope, Event.CREATED, listener);
+    dispatcher.onActivityCreated(activity, null);
+
+    assertEquals(1, listener.count);
+  }
+
+  @Test
+  public void subscribe_destroyedScope_isIgnored() {
+    Scope scope = new Scope();
+    scope.destroy();
+    CountingListener listener = new CountingListener();
+
+    dispatcher.subscribe(scope, Event.STOPPED, listener);
+    dispatcher.onActivityStopped(activity);
+
+    assertEquals(0, listener.count);
+  }
+
+  @Test
+  public void dispatch_afterScopeDestroyed_skipsItsListeners() {
+    Scope scope = new Scope();
+    CountingListener listener = new CountingListener();
+    dispatcher.subscribe(scope, Event.DESTROYED, listener);
+
+    scope.destroy();
+    dispatcher.onActivityDestroyed(activity);
+
+    assertEquals(0, listener.count);
+  }
+
+  private static int[] subscriberCounts(ActivityLifecycleDispatcher dispatcher) {
+    int[] counts = new int[Event.values().length];
+    for (Event event : Event.values()) {
+      counts[event.ordinal()] = dispatcher.getSubscriberCount(event);
+    }
+    return counts;
+  }
+
+  /** A subscription scope that is resumed until it is destroyed. */
+  private static final class Scope implements LifecycleOwner {
+    private final LifecycleRegistry lifecycle = new LifecycleRegistry(this);
+
+    Scope() {
+      lifecycle.setCurrentState(Lifecycle.State.RESUMED);
+    }
+
+    void destroy() {
+      lifecycle.setCurrentState(Lifecycle.State.DESTROYED);
+    }
+
+    @NonNull
+    @Override
+    public Lifecycle getLifecycle() {
+      return lifecycle;
+    }
+  }
+
+  /** Counts the events it receives. */
+  private static final class CountingListener implements ActivityLifecycleDispatcher.Listener {
+    int count;
+
+    @Override
+    public void onActivityEvent(@NonNull Activity activity) {
+      count++;
+    }
+  }
+}
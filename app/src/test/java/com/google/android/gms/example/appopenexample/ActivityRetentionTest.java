@@ -0,0 +1,112 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import static org.junit.Assert.assertEquals;
+
+import android.app.Activity;
+import android.os.Build;
+import androidx.test.core.app.ApplicationProvider;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+/**
+ * Runs the app's activities through their whole lifecycle and checks that nothing in the app keeps
+ * them reachable once they are destroyed: not the ad listener registries, the dispatcher
+ * subscriptions, the ad state observers, the ad cover or the foreground activity tracker.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.TIRAMISU)
+public class ActivityRetentionTest {
+
+  private static final int RECREATIONS = 10;
+
+  @Before
+  public void setUp() {
+    // Keep the real consent and SDK calls out of the activity starts.
+    MyApplication application = ApplicationProvider.getApplicationContext();
+    application.startOfflineProcess(
+        Scheduler.mainThread(),
+        Scheduler.mainThread(),
+        new AdMetrics(),
+        new Random(0),
+        new FakeAdLoader.Builder(Scheduler.mainThread()).build());
+  }
+
+  @Test
+  public void destroyedMainActivities_areCollected() throws InterruptedException {
+    assertAllCollected(launchAndDestroy(MainActivity.class));
+  }
+
+  @Test
+  public void destroyedSecondActivities_areCollected() throws InterruptedException {
+    assertAllCollected(launchAndDestroy(SecondActivity.class));
+  }
+
+  @Test
+  public void recreatedActivities_areCollected() throws InterruptedException {
+    List<WeakReference<Activity>> references = new ArrayList<>();
+    for (int i = 0; i < RECREATIONS; i++) {
+      ActivityController<MainActivity> controller =
+          Robolectric.buildActivity(MainActivity.class).setup();
+      references.add(new WeakReference<>(controller.get()));
+      controller.recreate();
+      references.add(new WeakReference<>(controller.get()));
+      controller.pause().stop().destroy();
+    }
+
+    assertAllCollected(references);
+  }
+
+  /** Start, resume and destroy activities that nothing in the test references afterwards. */
+  private static List<WeakReference<Activity>> launchAndDestroy(
+      Class<? extends Activity> activityClass) {
+    List<WeakReference<Activity>> references = new ArrayList<>();
+    for (int i = 0; i < RECREATIONS; i++) {
+      ActivityController<? extends Activity> controller =
+          Robolectric.buildActivity(activityClass).setup();
+      references.add(new WeakReference<>(controller.get()));
+      controller.pause().stop().destroy();
+    }
+    return references;
+  }
+
+  private static void assertAllCollected(List<WeakReference<Activity>> references)
+      throws InterruptedException {
+    int retained = references.size();
+    for (int i = 0; i < 50 && retained > 0; i++) {
+      Runtime.getRuntime().gc();
+      Thread.sleep(10);
+      retained = 0;
+      for (WeakReference<Activity> reference : references) {
+        if (reference.get() != null) {
+          retained++;
+        }
+      }
+    }
+
+    assertEquals("Destroyed activities still reachable", 0, retained);
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Build;
+import android.os.Looper;
+import androidx.test.core.app.ApplicationProvider;
+import java.time.Duration;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Runs the real startup pipeline and ad load and show paths against {@link FakeAdLoader} and
+ * checks every {@link AdTrace} slice they emit against its budget. The main looper's clock only
+ * moves when the test idles it, so the durations are those of the fake network.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.TIRAMISU)
+public class AdFlowBudgetTest {
+
+  private MyApplication application;
+  private TraceBudgetCollector collector;
+
+  @Before
+  public void setUp() {
+    application = ApplicationProvider.getApplicationContext();
+    collector = TraceBudgetCollector.install();
+  }
+
+  @After
+  public void tearDown() {
+    collector.uninstall();
+    for (AdTrace.Slice slice : AdTrace.Slice.values()) {
+      AdTrace.cancelSlice(slice);
+    }
+  }
+
+  @Test
+  public void startupLoadAndShow_withTypicalLatency_stayWithinBudgets() {
+    startOfflineProcess(300, 800);
+    MainActivity activity = startPipeline();
+    assertNotNull(application.getStartupPipeline().getCompletion().getNow());
+
+    boolean[] loaded = new boolean[1];
+    application.loadAd(application, isLoaded -> loaded[0] = isLoaded);
+    idleFor(1000);
+    assertTrue(loaded[0]);
+
+    boolean[] showComplete = new boolean[1];
+    application.showAdIfAvailable(activity, () -> showComplete[0] = true);
+    idleFor(2000);
+    assertTrue(showComplete[0]);
+
+    // Consent, SDK initialization, the first ad load, its AppOpenAd.load and the show.
+    assertTrue(collector.getSliceCount() >= 5);
+    collector.assertWithinBudgets();
+  }
+
+  @Test
+  public void firstAdLoad_slowerThanItsBudget_failsTheBudgetCheck() {
+    startOfflineProcess(2000, 2000);
+    startPipeline();
+
+    assertThrows(AssertionError.class, collector::assertWithinBudgets);
+  }
+
+  private void startOfflineProcess(long minLatencyMillis, long maxLatencyMillis) {
+    application.startOfflineProcess(
+        Scheduler.mainThread(),
+        Scheduler.mainThread(),
+        new AdMetrics(),
+        new Random(0),
+        new FakeAdLoader.Builder(Scheduler.mainThread())
+            .setLatencyMillis(minLatencyMillis, maxLatencyMillis)
+            .setShowDurationMillis(1000)
+            .build());
+  }
+
+  /** Create MainActivity without starting it, and run the startup pipeline from it. */
+  private MainActivity startPipeline() {
+    MainActivity activity = Robolectric.buildActivity(MainActivity.class).create().get();
+    application.getStartupPipeline().start(activity, null);
+    idleFor(3000);
+    return activity;
+  }
+
+  private static void idleFor(long millis) {
+    shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(millis));
+  }
+}
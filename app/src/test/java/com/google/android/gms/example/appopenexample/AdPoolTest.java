@@ -0,0 +1,118 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Checks the capacity and TTL eviction of {@link AdPool}. */
+public class AdPoolTest {
+
+  private static final long TTL_MILLIS = 1000;
+
+  private AdPool<String> pool;
+  private int expired;
+  private int replaced;
+
+  @Before
+  public void setUp() {
+    pool = new AdPool<>(2, TTL_MILLIS);
+    pool.setOnEvictedListener(
+        new AdPool.OnEvictedListener() {
+          @Override
+          public void onExpired(int count) {
+            expired += count;
+          }
+
+          @Override
+          public void onReplaced(int count) {
+            replaced += count;
+          }
+        });
+  }
+
+  @Test
+  public void poll_returnsTheFreshestAdFirst() {
+    pool.offer("old", 0);
+    pool.offer("new", 10);
+
+    assertEquals("new", pool.poll(20));
+    assertEquals("old", pool.poll(20));
+    assertNull(pool.poll(20));
+  }
+
+  @Test
+  public void offer_fullPool_replacesTheOldestAd() {
+    pool.offer("first", 0);
+    pool.offer("second", 10);
+
+    pool.offer("third", 20);
+
+    assertEquals(1, replaced);
+    assertEquals(2, pool.size(20));
+    assertEquals(10, pool.oldestLoadTimeMillis(20));
+  }
+
+  @Test
+  public void hasAd_afterTtl_evictsTheExpiredAds() {
+    pool.offer("first", 0);
+    pool.offer("second", 500);
+
+    assertTrue(pool.hasAd(TTL_MILLIS - 1));
+    assertEquals(0, expired);
+    assertEquals(1, pool.size(TTL_MILLIS));
+    assertEquals(1, expired);
+    assertFalse(pool.hasAd(500 + TTL_MILLIS));
+    assertEquals(2, expired);
+  }
+
+  @Test
+  public void isFull_countsOnlyValidAds() {
+    pool.offer("first", 0);
+    pool.offer("second", 500);
+
+    assertTrue(pool.isFull(TTL_MILLIS - 1));
+    assertFalse(pool.isFull(TTL_MILLIS));
+  }
+
+  @Test
+  public void oldestLoadTimeMillis_emptyPool_returnsMinusOne() {
+    assertEquals(-1, pool.oldestLoadTimeMillis(0));
+  }
+
+  @Test
+  public void clear_dropsEveryAdWithoutReportingEvictions() {
+    pool.offer("first", 0);
+    pool.offer("second", 10);
+
+    pool.clear();
+
+    assertFalse(pool.hasAd(20));
+    assertEquals(0, expired);
+    assertEquals(0, replaced);
+  }
+
+  @Test
+  public void constructor_zeroCapacity_throws() {
+    assertThrows(IllegalArgumentException.class, () -> new AdPool<String>(0, TTL_MILLIS));
+  }
+}
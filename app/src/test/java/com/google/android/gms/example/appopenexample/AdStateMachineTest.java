@@ -0,0 +1,147 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Build;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Races {@link AdStateMachine} transitions across threads. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.TIRAMISU)
+public class AdStateMachineTest {
+
+  private static final int THREAD_COUNT = 8;
+  private static final int ITERATIONS = 20000;
+
+  private AdStateMachine stateMachine;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    stateMachine = new AdStateMachine();
+    executor = Executors.newFixedThreadPool(THREAD_COUNT);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void tryBeginLoad_racingThreads_exactlyOneWins() throws Exception {
+    AtomicInteger winners = new AtomicInteger();
+
+    race(() -> {
+      if (stateMachine.tryBeginLoad()) {
+        winners.incrementAndGet();
+      }
+    });
+
+    assertEquals(1, winners.get());
+    assertTrue(stateMachine.isLoading());
+    assertEquals(AdStateMachine.State.LOADING, stateMachine.getState());
+  }
+
+  @Test
+  public void tryBeginShow_racingThreads_exactlyOneWins() throws Exception {
+    stateMachine.tryBeginLoad();
+    stateMachine.onLoadFinished(true);
+    AtomicInteger winners = new AtomicInteger();
+
+    race(() -> {
+      if (stateMachine.tryBeginShow()) {
+        winners.incrementAndGet();
+      }
+    });
+
+    assertEquals(1, winners.get());
+    assertFalse(stateMachine.isLoading());
+    assertEquals(AdStateMachine.State.SHOWING, stateMachine.getState());
+  }
+
+  @Test
+  public void transitions_racingThreads_neverOverlapLoadsOrShows() throws Exception {
+    AtomicInteger loadsInFlight = new AtomicInteger();
+    AtomicInteger showsInFlight = new AtomicInteger();
+    AtomicInteger overlaps = new AtomicInteger();
+
+    race(() -> {
+      for (int i = 0; i < ITERATIONS; i++) {
+        if (stateMachine.tryBeginLoad()) {
+          if (loadsInFlight.incrementAndGet() != 1) {
+            overlaps.incrementAndGet();
+          }
+          loadsInFlight.decrementAndGet();
+          stateMachine.onLoadFinished(i % 3 != 0);
+        }
+        if (stateMachine.tryBeginShow()) {
+          if (showsInFlight.incrementAndGet() != 1) {
+            overlaps.incrementAndGet();
+          }
+          showsInFlight.decrementAndGet();
+          stateMachine.onShowFinished(i % 2 == 0);
+        }
+        if (i % 7 == 0) {
+          stateMachine.onAdsExpired();
+        }
+      }
+    });
+
+    assertEquals(0, overlaps.get());
+    assertFalse(stateMachine.isLoading());
+    AdStateMachine.State state = stateMachine.getState();
+    assertTrue(
+        "Unexpected final state " + state,
+        state == AdStateMachine.State.IDLE
+            || state == AdStateMachine.State.READY
+            || state == AdStateMachine.State.EXPIRED);
+  }
+
+  /** Run the task on every thread at once and wait for all of them. */
+  private void race(Runnable task) throws Exception {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < THREAD_COUNT; i++) {
+      futures.add(
+          executor.submit(() -> {
+            start.await();
+            task.run();
+            return null;
+          }));
+    }
+    start.countDown();
+    for (Future<?> future : futures) {
+      future.get(30, TimeUnit.SECONDS);
+    }
+  }
+}
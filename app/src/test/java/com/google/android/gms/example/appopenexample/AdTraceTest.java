@@ -0,0 +1,88 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import android.os.Build;
+import android.os.SystemClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Checks that {@link AdTrace} reports slice durations and leaves budgets to the collector. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.TIRAMISU)
+public class AdTraceTest {
+
+  private TraceBudgetCollector collector;
+
+  @Before
+  public void setUp() {
+    collector = TraceBudgetCollector.install();
+  }
+
+  @After
+  public void tearDown() {
+    collector.uninstall();
+    for (AdTrace.Slice slice : AdTrace.Slice.values()) {
+      AdTrace.cancelSlice(slice);
+    }
+  }
+
+  @Test
+  public void endSlice_withinBudget_passesTheBudgetCheck() {
+    AdTrace.beginSlice(AdTrace.Slice.AD_LOAD);
+    SystemClock.sleep(AdTrace.Slice.AD_LOAD.budgetMillis / 2);
+    AdTrace.endSlice(AdTrace.Slice.AD_LOAD);
+
+    assertEquals(1, collector.getSliceCount());
+    collector.assertWithinBudgets();
+  }
+
+  @Test
+  public void endSlice_overBudget_doesNotThrowButFailsTheBudgetCheck() {
+    AdTrace.beginSlice(AdTrace.Slice.AD_SHOW);
+    SystemClock.sleep(AdTrace.Slice.AD_SHOW.budgetMillis + 1);
+    AdTrace.endSlice(AdTrace.Slice.AD_SHOW);
+
+    assertThrows(AssertionError.class, collector::assertWithinBudgets);
+  }
+
+  @Test
+  public void cancelSlice_reportsNoDuration() {
+    AdTrace.beginSlice(AdTrace.Slice.CONSENT);
+    AdTrace.cancelSlice(AdTrace.Slice.CONSENT);
+    AdTrace.endSlice(AdTrace.Slice.CONSENT);
+
+    assertEquals(0, collector.getSliceCount());
+  }
+
+  @Test
+  public void beginSlice_twice_keepsTheFirstStart() {
+    AdTrace.beginSlice(AdTrace.Slice.SDK_INIT);
+    SystemClock.sleep(AdTrace.Slice.SDK_INIT.budgetMillis + 1);
+    AdTrace.beginSlice(AdTrace.Slice.SDK_INIT);
+    AdTrace.endSlice(AdTrace.Slice.SDK_INIT);
+
+    assertEquals(1, collector.getSliceCount());
+    assertThrows(AssertionError.class, collector::assertWithinBudgets);
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.app.Activity;
+import android.os.Build;
+import java.lang.ref.WeakReference;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+/** Checks that {@link ForegroundActivityTracker} never keeps a finished activity around. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.TIRAMISU)
+public class ForegroundActivityTrackerTest {
+
+  private ForegroundActivityTracker tracker;
+
+  @Before
+  public void setUp() {
+    tracker = new ForegroundActivityTracker();
+  }
+
+  @Test
+  public void getForegroundActivity_resumedActivity_returnsIt() {
+    Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+
+    tracker.setForegroundActivity(activity);
+
+    assertSame(activity, tracker.getForegroundActivity());
+  }
+
+  @Test
+  public void getForegroundActivity_destroyedActivity_returnsNull() {
+    ActivityController<Activity> controller = Robolectric.buildActivity(Activity.class).setup();
+    tracker.setForegroundActivity(controller.get());
+
+    controller.pause().stop().destroy();
+
+    assertNull(tracker.getForegroundActivity());
+  }
+
+  @Test
+  public void clear_anotherActivity_keepsTheTrackedOne() {
+    Activity first = Robolectric.buildActivity(Activity.class).setup().get();
+    Activity second = Robolectric.buildActivity(Activity.class).setup().get();
+    tracker.setForegroundActivity(first);
+
+    tracker.clear(second);
+
+    assertSame(first, tracker.getForegroundActivity());
+  }
+
+  @Test
+  public void setForegroundActivity_doesNotRetainTheActivity() throws InterruptedException {
+    WeakReference<Activity> reference = trackNewActivity();
+
+    for (int i = 0; i < 50 && reference.get() != null; i++) {
+      Runtime.getRuntime().gc();
+      Thread.sleep(10);
+    }
+
+    assertNull("The tracker kept the activity alive", reference.get());
+    assertNull(tracker.getForegroundActivity());
+  }
+
+  /** Track an activity that nothing else references once this method returns. */
+  private WeakReference<Activity> trackNewActivity() {
+    Activity activity = Robolectric.buildActivity(Activity.class).get();
+    tracker.setForegroundActivity(activity);
+    return new WeakReference<>(activity);
+  }
+}
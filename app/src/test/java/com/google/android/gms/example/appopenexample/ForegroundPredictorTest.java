@@ -0,0 +1,167 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.Build;
+import androidx.test.core.app.ApplicationProvider;
+import java.io.File;
+import java.util.TimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Trains {@link ForegroundPredictor} on regular sessions and checks its predictions. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.TIRAMISU)
+public class ForegroundPredictorTest {
+
+  private static final String FILE_NAME = "test_sessions";
+  private static final long MINUTE_MILLIS = 60000L;
+  private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+
+  /** Start of the test timeline, at midnight UTC well after the epoch. */
+  private static final long START_MILLIS = 10 * 24 * HOUR_MILLIS;
+
+  private Context context;
+  private VirtualScheduler ioScheduler;
+  private TimeZone defaultTimeZone;
+  private long now = START_MILLIS;
+
+  @Before
+  public void setUp() {
+    defaultTimeZone = TimeZone.getDefault();
+    TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+    context = ApplicationProvider.getApplicationContext();
+    new File(context.getFilesDir(), FILE_NAME).delete();
+    ioScheduler = new VirtualScheduler();
+  }
+
+  @After
+  public void tearDown() {
+    TimeZone.setDefault(defaultTimeZone);
+  }
+
+  @Test
+  public void isReturnLikely_untrained_returnsTrue() {
+    ForegroundPredictor predictor = loadedPredictor();
+    runSessions(predictor, 3);
+
+    assertFalse(predictor.isTrained());
+    assertTrue(predictor.isReturnLikely(now + 10 * HOUR_MILLIS, MINUTE_MILLIS));
+  }
+
+  @Test
+  public void isReturnLikely_withinTheUsualGap_returnsTrue() {
+    ForegroundPredictor predictor = loadedPredictor();
+    runSessions(predictor, 20);
+
+    assertTrue(predictor.isTrained());
+    assertTrue(predictor.isReturnLikely(now, 10 * MINUTE_MILLIS));
+  }
+
+  @Test
+  public void isReturnLikely_longPastTheUsualGap_returnsFalse() {
+    ForegroundPredictor predictor = loadedPredictor();
+    runSessions(predictor, 20);
+
+    assertFalse(predictor.isReturnLikely(now + 3 * HOUR_MILLIS, 10 * MINUTE_MILLIS));
+  }
+
+  @Test
+  public void isReturnLikely_inTheForeground_returnsTrue() {
+    ForegroundPredictor predictor = loadedPredictor();
+    runSessions(predictor, 20);
+
+    predictor.onForeground(now + 3 * HOUR_MILLIS);
+
+    assertTrue(predictor.isReturnLikely(now + 3 * HOUR_MILLIS, 10 * MINUTE_MILLIS));
+  }
+
+  @Test
+  public void isTrained_beforeTheModelIsLoaded_returnsFalse() {
+    ForegroundPredictor predictor = new ForegroundPredictor(context, FILE_NAME, ioScheduler);
+    predictor.preload();
+
+    assertFalse(predictor.isTrained());
+  }
+
+  @Test
+  public void preload_restoresTheModelAndTheRunningGap() {
+    runSessions(loadedPredictor(), 20);
+
+    ForegroundPredictor restored = loadedPredictor();
+
+    assertTrue(restored.isTrained());
+    assertFalse(restored.isReturnLikely(now + 3 * HOUR_MILLIS, 10 * MINUTE_MILLIS));
+  }
+
+  @Test
+  public void millisUntilLikelyReturn_pointsAtTheUsualGap() {
+    ForegroundPredictor predictor = loadedPredictor();
+    runSessions(predictor, 20);
+
+    // Every gap was 5 minutes, which falls in the [4, 8) minute bucket.
+    assertEquals(
+        4 * MINUTE_MILLIS, predictor.millisUntilLikelyReturn(now, MINUTE_MILLIS, HOUR_MILLIS));
+  }
+
+  @Test
+  public void millisUntilLikelyReturn_beyondTheHorizon_returnsMinusOne() {
+    ForegroundPredictor predictor = loadedPredictor();
+    runSessions(predictor, 20);
+
+    assertEquals(-1, predictor.millisUntilLikelyReturn(now, MINUTE_MILLIS, 3 * MINUTE_MILLIS));
+  }
+
+  @Test
+  public void millisUntilLikelyReturn_inTheForeground_returnsZero() {
+    ForegroundPredictor predictor = loadedPredictor();
+    runSessions(predictor, 20);
+    predictor.onForeground(now);
+
+    assertEquals(0, predictor.millisUntilLikelyReturn(now, MINUTE_MILLIS, HOUR_MILLIS));
+  }
+
+  private ForegroundPredictor loadedPredictor() {
+    ForegroundPredictor predictor = new ForegroundPredictor(context, FILE_NAME, ioScheduler);
+    predictor.preload();
+    ioScheduler.advanceBy(0);
+    return predictor;
+  }
+
+  /**
+   * Run one-minute sessions five minutes apart, ending in the background, and write the model.
+   */
+  private void runSessions(ForegroundPredictor predictor, int count) {
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        now += 5 * MINUTE_MILLIS;
+      }
+      predictor.onForeground(now);
+      now += MINUTE_MILLIS;
+      predictor.onBackground(now);
+    }
+    ioScheduler.advanceBy(0);
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.Build;
+import androidx.test.core.app.ApplicationProvider;
+import java.io.File;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Checks the rules and persistence of {@link FrequencyCap}. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.TIRAMISU)
+public class FrequencyCapTest {
+
+  private static final String FILE_NAME = "test_impressions";
+  private static final long HOUR_MILLIS = 3600000L;
+  private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+  private static final long MIN_INTERVAL_MILLIS = 60000L;
+
+  /** Start of the test timeline, well after the epoch. */
+  private static final long START_MILLIS = 10 * DAY_MILLIS;
+
+  private Context context;
+  private VirtualScheduler ioScheduler;
+
+  @Before
+  public void setUp() {
+    context = ApplicationProvider.getApplicationContext();
+    new File(context.getFilesDir(), FILE_NAME).delete();
+    ioScheduler = new VirtualScheduler();
+  }
+
+  @Test
+  public void canShow_beforeTheImpressionsAreLoaded_returnsFalse() {
+    FrequencyCap cap = newCap();
+    cap.preload();
+
+    assertFalse(cap.canShow(START_MILLIS));
+    ioScheduler.advanceBy(0);
+    assertTrue(cap.canShow(START_MILLIS));
+  }
+
+  @Test
+  public void canShow_withinTheMinimumInterval_returnsFalse() {
+    FrequencyCap cap = loadedCap();
+
+    cap.recordImpression(START_MILLIS);
+
+    assertFalse(cap.canShow(START_MILLIS + MIN_INTERVAL_MILLIS - 1));
+    assertTrue(cap.canShow(START_MILLIS + MIN_INTERVAL_MILLIS));
+  }
+
+  @Test
+  public void canShow_hourlyCapReached_returnsFalseUntilTheHourPasses() {
+    FrequencyCap cap = loadedCap();
+
+    cap.recordImpression(START_MILLIS);
+    cap.recordImpression(START_MILLIS + MIN_INTERVAL_MILLIS);
+
+    assertFalse(cap.canShow(START_MILLIS + HOUR_MILLIS - 1));
+    assertTrue(cap.canShow(START_MILLIS + HOUR_MILLIS));
+  }
+
+  @Test
+  public void canShow_dailyCapReached_returnsFalseUntilTheDayPasses() {
+    FrequencyCap cap = loadedCap();
+
+    cap.recordImpression(START_MILLIS);
+    cap.recordImpression(START_MILLIS + HOUR_MILLIS);
+    cap.recordImpression(START_MILLIS + 2 * HOUR_MILLIS);
+
+    assertFalse(cap.canShow(START_MILLIS + DAY_MILLIS - 1));
+    assertTrue(cap.canShow(START_MILLIS + DAY_MILLIS));
+  }
+
+  @Test
+  public void canShow_clockMovedBack_dropsImpressionsInTheFuture() {
+    FrequencyCap cap = loadedCap();
+    cap.recordImpression(START_MILLIS);
+
+    assertTrue(cap.canShow(START_MILLIS - HOUR_MILLIS));
+  }
+
+  @Test
+  public void preload_restoresTheImpressionsWrittenByAnEarlierProcess() {
+    FrequencyCap cap = loadedCap();
+    cap.recordImpression(START_MILLIS);
+    cap.flushSoon();
+    ioScheduler.advanceBy(0);
+
+    FrequencyCap restored = loadedCap();
+
+    assertFalse(restored.canShow(START_MILLIS + 1));
+    assertTrue(restored.canShow(START_MILLIS + MIN_INTERVAL_MILLIS));
+  }
+
+  /** A cap of two impressions per hour and three per day. */
+  private FrequencyCap newCap() {
+    return new FrequencyCap(context, FILE_NAME, ioScheduler, 2, 3, MIN_INTERVAL_MILLIS);
+  }
+
+  private FrequencyCap loadedCap() {
+    FrequencyCap cap = newCap();
+    cap.preload();
+    ioScheduler.advanceBy(0);
+    return cap;
+  }
+}
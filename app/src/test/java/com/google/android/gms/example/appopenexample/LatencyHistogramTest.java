@@ -0,0 +1,118 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Checks the bucketing and percentiles of {@link LatencyHistogram}. */
+public class LatencyHistogramTest {
+
+  @Test
+  public void snapshot_nothingRecorded_reportsZeros() {
+    LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+    assertEquals(0, snapshot.getCount());
+    assertEquals(0, snapshot.getMeanMillis());
+    assertEquals(0, snapshot.getPercentileMillis(50));
+  }
+
+  @Test
+  public void getPercentileMillis_returnsTheUpperBoundOfTheBucket() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 90; i++) {
+      histogram.record(20);
+    }
+    for (int i = 0; i < 10; i++) {
+      histogram.record(800);
+    }
+
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+    assertEquals(25, snapshot.getPercentileMillis(50));
+    assertEquals(25, snapshot.getPercentileMillis(90));
+    assertEquals(800, snapshot.getPercentileMillis(99));
+  }
+
+  @Test
+  public void getPercentileMillis_neverExceedsTheLargestSample() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(7);
+    histogram.record(260);
+
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+    assertEquals(10, snapshot.getPercentileMillis(50));
+    assertEquals(260, snapshot.getPercentileMillis(100));
+  }
+
+  @Test
+  public void getPercentileMillis_overflowBucket_reportsTheLargestSample() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(45000);
+    histogram.record(60000);
+
+    assertEquals(60000, histogram.snapshot().getPercentileMillis(50));
+  }
+
+  @Test
+  public void record_negativeLatency_isIgnored() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-1);
+
+    assertEquals(0, histogram.snapshot().getCount());
+  }
+
+  @Test
+  public void snapshot_reportsTheMeanAndMax() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(100);
+    histogram.record(200);
+    histogram.record(600);
+
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+    assertEquals(3, snapshot.getCount());
+    assertEquals(300, snapshot.getMeanMillis());
+    assertEquals(600, snapshot.getMaxMillis());
+  }
+
+  @Test
+  public void record_fromManyThreads_countsEverySample() throws InterruptedException {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      long latency = 100L * (i + 1);
+      threads[i] =
+          new Thread(
+              () -> {
+                for (int j = 0; j < 10000; j++) {
+                  histogram.record(latency);
+                }
+              });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(40000, snapshot.getCount());
+    assertEquals(250, snapshot.getMeanMillis());
+    assertEquals(400, snapshot.getMaxMillis());
+  }
+}
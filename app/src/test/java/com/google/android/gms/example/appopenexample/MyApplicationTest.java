@@ -0,0 +1,134 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Build;
+import android.os.Looper;
+import androidx.test.core.app.ApplicationProvider;
+import java.time.Duration;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Checks how {@link MyApplication} starts the ad components for the first activity. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.TIRAMISU)
+public class MyApplicationTest {
+
+  private MyApplication application;
+  private FakeAdLoader adLoader;
+
+  @Before
+  public void setUp() {
+    application = ApplicationProvider.getApplicationContext();
+    adLoader = new FakeAdLoader.Builder(Scheduler.mainThread()).setLatencyMillis(200, 200).build();
+    application.startOfflineProcess(
+        Scheduler.mainThread(), Scheduler.mainThread(), new AdMetrics(), new Random(1), adLoader);
+  }
+
+  @Test
+  public void mainActivityWithoutSplash_startsThePipelineAndLoadsTheFirstAd() {
+    assertFalse(application.getStartupPipeline().isStarted());
+
+    // What the system does when it restores MainActivity after process death.
+    Robolectric.buildActivity(MainActivity.class).setup();
+    shadowOf(Looper.getMainLooper()).idleFor(Duration.ofSeconds(1));
+
+    StartupPipeline.Result result = application.getStartupPipeline().getCompletion().getNow();
+    assertNotNull(result);
+    assertTrue(result.canRequestAds);
+    assertTrue(result.isAdLoaded);
+    assertTrue(adLoader.getFillCount() > 0);
+  }
+
+  @Test
+  public void secondActivityWithoutSplash_startsThePipeline() {
+    Robolectric.buildActivity(SecondActivity.class).setup();
+    shadowOf(Looper.getMainLooper()).idleFor(Duration.ofSeconds(1));
+
+    StartupPipeline.Result result = application.getStartupPipeline().getCompletion().getNow();
+    assertNotNull(result);
+    assertTrue(result.isAdLoaded);
+  }
+
+  @Test
+  public void awaitAd_loadSlowerThanTheTimeout_timesOutAndCachesTheAdLater() {
+    VirtualScheduler scheduler = new VirtualScheduler();
+    FakeAdLoader slowLoader =
+        new FakeAdLoader.Builder(scheduler).setLatencyMillis(3000, 3000).build();
+    startVirtualProcess(scheduler, slowLoader);
+
+    SettableFuture<AdResult> future = application.awaitAd(application, 1000);
+    scheduler.advanceBy(999);
+    assertFalse(future.isDone());
+    scheduler.advanceBy(1);
+
+    assertEquals(AdResult.Status.TIMED_OUT, future.getNow().getStatus());
+    assertNull(future.getNow().getAd());
+
+    // The load was not abandoned; the next wait finds its ad right away.
+    scheduler.advanceBy(2000);
+    SettableFuture<AdResult> next = application.awaitAd(application, 1000);
+    assertEquals(AdResult.Status.LOADED, next.getNow().getStatus());
+  }
+
+  @Test
+  public void awaitAd_loadWithinTheTimeout_resolvesToTheAd() {
+    VirtualScheduler scheduler = new VirtualScheduler();
+    FakeAdLoader loader = new FakeAdLoader.Builder(scheduler).setLatencyMillis(500, 500).build();
+    startVirtualProcess(scheduler, loader);
+
+    SettableFuture<AdResult> first = application.awaitAd(application, 1000);
+    SettableFuture<AdResult> second = application.awaitAd(application, 1000);
+    scheduler.advanceBy(500);
+
+    assertEquals(AdResult.Status.LOADED, first.getNow().getStatus());
+    assertNotNull(first.getNow().getAd());
+    // Both waits shared the one load.
+    assertSame(first.getNow().getAd(), second.getNow().getAd());
+  }
+
+  @Test
+  public void awaitAd_failedLoad_resolvesToAFailure() {
+    VirtualScheduler scheduler = new VirtualScheduler();
+    FakeAdLoader loader =
+        new FakeAdLoader.Builder(scheduler).setLatencyMillis(500, 500).setFillRate(0).build();
+    startVirtualProcess(scheduler, loader);
+
+    SettableFuture<AdResult> future = application.awaitAd(application, 1000);
+    scheduler.advanceBy(500);
+
+    assertEquals(AdResult.Status.FAILED, future.getNow().getStatus());
+  }
+
+  /** Run the ad components on a virtual clock, with the SDK treated as initialized. */
+  private void startVirtualProcess(VirtualScheduler scheduler, FakeAdLoader loader) {
+    application.startOfflineProcess(scheduler, scheduler, new AdMetrics(), new Random(1), loader);
+    application.onMobileAdsSdkInitialized();
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import static org.junit.Assert.assertEquals;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.os.PowerManager;
+import androidx.test.core.app.ApplicationProvider;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowNetworkCapabilities;
+import org.robolectric.shadows.ShadowNetworkInfo;
+
+/** Drives each {@link PrefetchPolicy} gate through the platform service shadows. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.TIRAMISU)
+public class PrefetchPolicyTest {
+
+  private ConnectivityManager connectivityManager;
+  private PowerManager powerManager;
+  private PrefetchPolicy policy;
+
+  @Before
+  public void setUp() {
+    Context context = ApplicationProvider.getApplicationContext();
+    connectivityManager =
+        (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+    policy = new PrefetchPolicy(context);
+    setActiveNetwork(ConnectivityManager.TYPE_WIFI, true);
+  }
+
+  @Test
+  public void decide_unmeteredNetwork_prefetches() {
+    assertEquals(PrefetchPolicy.Decision.PREFETCH, policy.decide(1));
+  }
+
+  @Test
+  public void decide_noActiveNetwork_defers() {
+    shadowOf(connectivityManager).setDefaultNetworkActive(false);
+    shadowOf(connectivityManager).setActiveNetworkInfo(null);
+
+    assertEquals(PrefetchPolicy.Decision.DEFER, policy.decide(0));
+  }
+
+  @Test
+  public void decide_networkWithoutInternet_defers() {
+    setActiveNetwork(ConnectivityManager.TYPE_WIFI, false);
+
+    assertEquals(PrefetchPolicy.Decision.DEFER, policy.decide(0));
+  }
+
+  @Test
+  public void decide_severeThermalStatus_defers() {
+    shadowOf(powerManager).setCurrentThermalStatus(PowerManager.THERMAL_STATUS_SEVERE);
+
+    assertEquals(PrefetchPolicy.Decision.DEFER, policy.decide(0));
+  }
+
+  @Test
+  public void decide_moderateThermalStatus_loadsOnDemand() {
+    shadowOf(powerManager).setCurrentThermalStatus(PowerManager.THERMAL_STATUS_MODERATE);
+
+    assertEquals(PrefetchPolicy.Decision.ON_DEMAND, policy.decide(0));
+  }
+
+  @Test
+  public void decide_lightThermalStatus_prefetches() {
+    shadowOf(powerManager).setCurrentThermalStatus(PowerManager.THERMAL_STATUS_LIGHT);
+
+    assertEquals(PrefetchPolicy.Decision.PREFETCH, policy.decide(0));
+  }
+
+  @Test
+  public void decide_powerSaveMode_loadsOnDemand() {
+    shadowOf(powerManager).setIsPowerSaveMode(true);
+
+    assertEquals(PrefetchPolicy.Decision.ON_DEMAND, policy.decide(0));
+  }
+
+  @Test
+  public void decide_dataSaver_loadsOnDemand() {
+    shadowOf(connectivityManager)
+        .setRestrictBackgroundStatus(ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED);
+
+    assertEquals(PrefetchPolicy.Decision.ON_DEMAND, policy.decide(0));
+  }
+
+  @Test
+  public void decide_meteredNetworkWithCachedAd_loadsOnDemand() {
+    setActiveNetwork(ConnectivityManager.TYPE_MOBILE, true);
+
+    assertEquals(PrefetchPolicy.Decision.ON_DEMAND, policy.decide(1));
+  }
+
+  @Test
+  public void decide_meteredNetworkWithEmptyPool_prefetches() {
+    setActiveNetwork(ConnectivityManager.TYPE_MOBILE, true);
+
+    assertEquals(PrefetchPolicy.Decision.PREFETCH, policy.decide(0));
+  }
+
+  /**
+   * Make a connected network of the given type the active one.
+   *
+   * @param type the {@link ConnectivityManager} network type; mobile networks are metered
+   * @param hasInternet whether the network has the internet capability
+   */
+  private void setActiveNetwork(int type, boolean hasInternet) {
+    shadowOf(connectivityManager)
+        .setActiveNetworkInfo(
+            ShadowNetworkInfo.newInstance(
+                NetworkInfo.DetailedState.CONNECTED, type, 0, true, NetworkInfo.State.CONNECTED));
+    NetworkCapabilities capabilities = ShadowNetworkCapabilities.newInstance();
+    if (hasInternet) {
+      shadowOf(capabilities).addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+    }
+    shadowOf(connectivityManager)
+        .setNetworkCapabilities(connectivityManager.getActiveNetwork(), capabilities);
+  }
+}
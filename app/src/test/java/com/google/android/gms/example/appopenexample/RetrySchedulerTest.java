@@ -0,0 +1,156 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.android.gms.ads.AdRequest;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Checks the backoff of {@link RetryScheduler} on a virtual clock. */
+public class RetrySchedulerTest {
+
+  private static final long MAX_DELAY_MILLIS = 5 * 60000L;
+
+  private VirtualScheduler scheduler;
+  private FixedRandom random;
+  private RetryScheduler retryScheduler;
+  private int retries;
+
+  @Before
+  public void setUp() {
+    scheduler = new VirtualScheduler();
+    random = new FixedRandom();
+    retryScheduler = new RetryScheduler(scheduler, random);
+  }
+
+  @Test
+  public void onLoadFailed_transientError_doublesTheBackoff() {
+    assertEquals(1000, delayOf(AdRequest.ERROR_CODE_NETWORK_ERROR));
+    assertEquals(2000, delayOf(AdRequest.ERROR_CODE_NETWORK_ERROR));
+    assertEquals(4000, delayOf(AdRequest.ERROR_CODE_NETWORK_ERROR));
+    assertEquals(3, retryScheduler.getAttempt());
+  }
+
+  @Test
+  public void onLoadFailed_noFill_retriesMoreSlowly() {
+    assertEquals(7500, delayOf(AdRequest.ERROR_CODE_NO_FILL));
+  }
+
+  @Test
+  public void onLoadFailed_jitter_staysWithinTheUpperHalfOfTheBackoff() {
+    random.value = 0.999;
+
+    long delay = delayOf(AdRequest.ERROR_CODE_NETWORK_ERROR);
+
+    assertTrue("Delay " + delay, delay >= 1000 && delay < 2000);
+  }
+
+  @Test
+  public void onLoadFailed_manyFailures_capsTheDelay() {
+    random.value = 0.999;
+    for (int i = 0; i < 20; i++) {
+      long delay = delayOf(AdRequest.ERROR_CODE_NO_FILL);
+      assertTrue("Delay " + delay + " after " + i + " failures", delay <= MAX_DELAY_MILLIS);
+    }
+  }
+
+  @Test
+  public void onLoadFailed_permanentError_doesNotRetry() {
+    assertFalse(retryScheduler.onLoadFailed(AdRequest.ERROR_CODE_INVALID_REQUEST, this::retry));
+
+    scheduler.advanceBy(MAX_DELAY_MILLIS);
+
+    assertFalse(retryScheduler.isRetryPending());
+    assertEquals(0, retries);
+  }
+
+  @Test
+  public void pause_holdsTheRetryUntilResumedForTheRemainingDelay() {
+    retryScheduler.onLoadFailed(AdRequest.ERROR_CODE_NETWORK_ERROR, this::retry);
+    scheduler.advanceBy(400);
+
+    retryScheduler.pause();
+    scheduler.advanceBy(10000);
+    assertEquals(0, retries);
+    assertTrue(retryScheduler.isRetryPending());
+
+    // The backoff is already over, so the retry runs right away.
+    retryScheduler.resume();
+    scheduler.advanceBy(0);
+    assertEquals(1, retries);
+    assertFalse(retryScheduler.isRetryPending());
+  }
+
+  @Test
+  public void resume_beforeTheBackoffEnds_waitsForTheRest() {
+    retryScheduler.onLoadFailed(AdRequest.ERROR_CODE_NETWORK_ERROR, this::retry);
+    scheduler.advanceBy(400);
+    retryScheduler.pause();
+
+    retryScheduler.resume();
+    scheduler.advanceBy(599);
+    assertEquals(0, retries);
+    scheduler.advanceBy(1);
+    assertEquals(1, retries);
+  }
+
+  @Test
+  public void onLoadSucceeded_resetsTheBackoffAndDropsThePendingRetry() {
+    delayOf(AdRequest.ERROR_CODE_NETWORK_ERROR);
+    retryScheduler.onLoadFailed(AdRequest.ERROR_CODE_NETWORK_ERROR, this::retry);
+
+    retryScheduler.onLoadSucceeded();
+    scheduler.advanceBy(MAX_DELAY_MILLIS);
+
+    assertEquals(1, retries);
+    assertEquals(0, retryScheduler.getAttempt());
+    assertEquals(1000, delayOf(AdRequest.ERROR_CODE_NETWORK_ERROR));
+  }
+
+  /** Fail a load and measure how long the retry takes to run. */
+  private long delayOf(int errorCode) {
+    long failedAt = scheduler.now();
+    long[] retriedAt = {-1};
+    retryScheduler.onLoadFailed(
+        errorCode,
+        () -> {
+          retries++;
+          retriedAt[0] = scheduler.now();
+        });
+    scheduler.advanceBy(MAX_DELAY_MILLIS);
+    assertTrue("The retry never ran", retriedAt[0] >= 0);
+    return retriedAt[0] - failedAt;
+  }
+
+  private void retry() {
+    retries++;
+  }
+
+  /** Jitter source that always returns the same value. */
+  private static final class FixedRandom extends Random {
+    double value;
+
+    @Override
+    public double nextDouble() {
+      return value;
+    }
+  }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import android.app.Activity;
+import android.content.ComponentCallbacks2;
+import androidx.annotation.NonNull;
+import androidx.lifecycle.ProcessLifecycleOwner;
+import com.google.android.gms.ads.AdRequest;
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Deterministic simulator that replays synthetic user sessions against the production {@link
+ * MyApplication} on a virtual clock, to compare policy changes by fill, show rate and wasted loads
+ * without a device. Meant to run under Robolectric, which provides the application, the activity
+ * and the platform services the app reads.
+ *
+ * <p>Each session cold or warm starts the app, spends some time in the foreground (navigating
+ * between activities, where every navigation is a show opportunity like the show ad buttons), then
+ * goes to the background, where the process may be killed. Sessions go through the same lifecycle
+ * callbacks as on a device: activity events reach the application's dispatcher, which starts the
+ * {@link StartupPipeline} in a new process, and the process lifecycle drives the foreground show
+ * through the {@link ForegroundShowScheduler}. Every process serves ads from a {@link
+ * FakeAdLoader}; the persisted state survives process death like it does on a device. Metrics are
+ * shared by every process, so the report covers the whole run.
+ */
+final class SessionSimulator {
+
+  /** Aggregate result of a simulation run. */
+  static final class Report {
+    final int sessions;
+    final int processDeaths;
+    final long virtualDurationMillis;
+    final AdMetrics.Snapshot metrics;
+
+    Report(
+        int sessions, int processDeaths, long virtualDurationMillis, AdMetrics.Snapshot metrics) {
+      this.sessions = sessions;
+      this.processDeaths = processDeaths;
+      this.virtualDurationMillis = virtualDurationMillis;
+      this.metrics = metrics;
+    }
+
+    /**
+     * Ads that were loaded but never shown, because they expired, were replaced or died with the
+     * process, as a fraction of all filled loads.
+     */
+    double getWastedLoadRate() {
+      long wasted =
+          metrics.adsExpiredUnused + metrics.adsReplacedUnused + metrics.adsReleasedUnused;
+      return metrics.loadsFilled == 0 ? 0 : (double) wasted / metrics.loadsFilled;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+      return String.format(
+          "sessions=%d processDeaths=%d wastedLoadRate=%.3f virtualHours=%.1f | %s",
+          sessions,
+          processDeaths,
+          getWastedLoadRate(),
+          virtualDurationMillis / 3600000.0,
+          metrics);
+    }
+  }
+
+  /** Scheduler of one simulated process; its tasks that are still queued when it dies never run. */
+  private static final class ProcessScheduler implements Scheduler {
+    private final VirtualScheduler clock;
+    private boolean isDead;
+
+    ProcessScheduler(VirtualScheduler clock) {
+      this.clock = clock;
+    }
+
+    @Override
+    public long now() {
+      return clock.now();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+      return clock.currentTimeMillis();
+    }
+
+    @Override
+    public Cancellable schedule(@NonNull Runnable task, long delayMillis) {
+      return clock.schedule(
+          () -> {
+            if (!isDead) {
+              task.run();
+            }
+          },
+          delayMillis);
+    }
+
+    void kill() {
+      isDead = true;
+    }
+  }
+
+  private final Builder config;
+  private final MyApplication application;
+  private final Activity activity;
+  private final Random random;
+  private final VirtualScheduler clock = new VirtualScheduler();
+  private final AdMetrics metrics = new AdMetrics();
+
+  private ProcessScheduler processScheduler;
+  private int processCount;
+  private int processDeaths;
+
+  private SessionSimulator(Builder builder, MyApplication application, Activity activity) {
+    this.config = builder;
+    this.application = application;
+    this.activity = activity;
+    this.random = new Random(builder.seed);
+  }
+
+  /** Replay every configured session, starting from a fresh install, and report the metrics. */
+  @NonNull
+  Report run() {
+    deletePersistedState();
+    for (int i = 0; i < config.sessionCount; i++) {
+      runSession();
+    }
+    return new Report(config.sessionCount, processDeaths, clock.now(), metrics.snapshot());
+  }
+
+  private void runSession() {
+    boolean isColdStart = processScheduler == null;
+    if (isColdStart) {
+      startProcess();
+    }
+    // The activity starts before the process reaches the foreground, like on a device.
+    ActivityLifecycleDispatcher dispatcher = application.getActivityLifecycleDispatcher();
+    dispatcher.onActivityStarted(activity);
+    application.onStart(ProcessLifecycleOwner.get());
+    if (isColdStart) {
+      // The splash waits for the first ad, up to its budget.
+      SettableFuture<StartupPipeline.Result> completion =
+          application.getStartupPipeline().getCompletion();
+      clock.advanceUntil(
+          () -> completion.getNow() != null, clock.now() + config.splashBudgetMillis);
+    }
+
+    long foregroundEnd = clock.now() + Math.round(exponential(config.meanForegroundMillis));
+    long navigations = Math.round(exponential(config.meanNavigationsPerSession));
+    for (long i = 0; i < navigations && clock.now() < foregroundEnd; i++) {
+      clock.advanceBy((foregroundEnd - clock.now()) / (navigations - i + 1));
+      dispatcher.onActivityStarted(activity);
+      application.showAdIfAvailable(activity, () -> {});
+    }
+    clock.advanceTo(foregroundEnd);
+    // Let an ad that is still on screen finish before the app goes to the background.
+    clock.advanceUntil(() -> !isAdShowing(), clock.now() + config.showDurationMillis);
+
+    dispatcher.onActivityStopped(activity);
+    application.onStop(ProcessLifecycleOwner.get());
+    if (random.nextDouble() < config.processDeathRate) {
+      killProcess();
+    }
+    clock.advanceBy(Math.round(exponential(config.meanBackgroundMillis)));
+  }
+
+  /**
+   * Start a process whose ads come from a {@link FakeAdLoader}. The first activity that starts runs
+   * the startup pipeline of the application, which initializes ads and loads the first one.
+   */
+  private void startProcess() {
+    processScheduler = new ProcessScheduler(clock);
+    application.startOfflineProcess(
+        processScheduler,
+        processScheduler,
+        metrics,
+        new Random(config.seed + processCount),
+        new FakeAdLoader.Builder(processScheduler)
+            .setLatencyMillis(config.minLoadLatencyMillis, config.maxLoadLatencyMillis)
+            .setFillRate(config.fillRate)
+            .setFailureCodes(AdRequest.ERROR_CODE_NO_FILL, AdRequest.ERROR_CODE_NETWORK_ERROR)
+            .setShowFailureRate(config.showFailureRate)
+            .setShowDurationMillis(config.showDurationMillis)
+            .setSeed(config.seed + processCount)
+            .build());
+    processCount++;
+  }
+
+  private boolean isAdShowing() {
+    return application.getAdState().getValue() == AdStateMachine.State.SHOWING;
+  }
+
+  /** Kill the process in the background. Cached ads are released first, and count as wasted. */
+  private void killProcess() {
+    processDeaths++;
+    application.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    application.getActivityLifecycleDispatcher().onActivityDestroyed(activity);
+    processScheduler.kill();
+    processScheduler = null;
+  }
+
+  private void deletePersistedState() {
+    File[] files = application.getFilesDir().listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+  }
+
+  /** Sample an exponentially distributed value with the given mean. */
+  private double exponential(double mean) {
+    return -mean * Math.log(1 - random.nextDouble());
+  }
+
+  /** Builder for {@link SessionSimulator}; every setting has a realistic default. */
+  static final class Builder {
+    private long seed = 0;
+    private int sessionCount = 1000;
+    private double meanForegroundMillis = 3 * 60000;
+    private double meanBackgroundMillis = 45 * 60000;
+    private double meanNavigationsPerSession = 2;
+    private double processDeathRate = 0.3;
+    private long splashBudgetMillis = 5000;
+    private long minLoadLatencyMillis = 200;
+    private long maxLoadLatencyMillis = 2000;
+    private double fillRate = 0.8;
+    private double showFailureRate = 0.02;
+    private long showDurationMillis = 5000;
+
+    Builder setSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    Builder setSessionCount(int sessionCount) {
+      this.sessionCount = sessionCount;
+      return this;
+    }
+
+    /** Set the mean time spent in the foreground and in the background per session. */
+    Builder setMeanSessionMillis(double meanForegroundMillis, double meanBackgroundMillis) {
+      this.meanForegroundMillis = meanForegroundMillis;
+      this.meanBackgroundMillis = meanBackgroundMillis;
+      return this;
+    }
+
+    Builder setMeanNavigationsPerSession(double meanNavigationsPerSession) {
+      this.meanNavigationsPerSession = meanNavigationsPerSession;
+      return this;
+    }
+
+    /** Set the probability that the process is killed while the app is in the background. */
+    Builder setProcessDeathRate(double processDeathRate) {
+      this.processDeathRate = processDeathRate;
+      return this;
+    }
+
+    Builder setSplashBudgetMillis(long splashBudgetMillis) {
+      this.splashBudgetMillis = splashBudgetMillis;
+      return this;
+    }
+
+    Builder setLoadLatencyMillis(long minLoadLatencyMillis, long maxLoadLatencyMillis) {
+      this.minLoadLatencyMillis = minLoadLatencyMillis;
+      this.maxLoadLatencyMillis = maxLoadLatencyMillis;
+      return this;
+    }
+
+    Builder setFillRate(double fillRate) {
+      this.fillRate = fillRate;
+      return this;
+    }
+
+    Builder setShowFailureRate(double showFailureRate) {
+      this.showFailureRate = showFailureRate;
+      return this;
+    }
+
+    Builder setShowDurationMillis(long showDurationMillis) {
+      this.showDurationMillis = showDurationMillis;
+      return this;
+    }
+
+    /**
+     * Build a simulator.
+     *
+     * @param application the application whose lifecycle is simulated
+     * @param activity the activity ads are shown in; the fake ads never start it
+     */
+    SessionSimulator build(@NonNull MyApplication application, @NonNull Activity activity) {
+      return new SessionSimulator(this, application, activity);
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Activity;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.os.Build;
+import androidx.test.core.app.ApplicationProvider;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowNetworkCapabilities;
+import org.robolectric.shadows.ShadowNetworkInfo;
+
+/** Runs {@link SessionSimulator} against the production application. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.TIRAMISU)
+public class SessionSimulatorTest {
+
+  private static final long DAY_MILLIS = 24 * 3600000L;
+
+  private MyApplication application;
+  private Activity activity;
+
+  @Before
+  public void setUp() {
+    application = ApplicationProvider.getApplicationContext();
+    // Keep the real consent and SDK calls out of the activity start below.
+    application.startOfflineProcess(
+        Scheduler.mainThread(),
+        Scheduler.mainThread(),
+        new AdMetrics(),
+        new Random(0),
+        new FakeAdLoader.Builder(Scheduler.mainThread()).build());
+    activity = Robolectric.buildActivity(Activity.class).setup().get();
+
+    // An unmetered network with internet access, so the prefetch policy fills the whole pool.
+    ConnectivityManager connectivityManager =
+        (ConnectivityManager) application.getSystemService(Context.CONNECTIVITY_SERVICE);
+    shadowOf(connectivityManager)
+        .setActiveNetworkInfo(
+            ShadowNetworkInfo.newInstance(
+                NetworkInfo.DetailedState.CONNECTED,
+                ConnectivityManager.TYPE_WIFI,
+                0,
+                true,
+                NetworkInfo.State.CONNECTED));
+    NetworkCapabilities capabilities = ShadowNetworkCapabilities.newInstance();
+    shadowOf(capabilities).addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+    shadowOf(connectivityManager)
+        .setNetworkCapabilities(connectivityManager.getActiveNetwork(), capabilities);
+  }
+
+  @Test
+  public void run_sameSeed_reportsTheSameMetrics() {
+    SessionSimulator.Builder builder =
+        new SessionSimulator.Builder().setSeed(42).setSessionCount(200);
+
+    String first = builder.build(application, activity).run().toString();
+    String second = builder.build(application, activity).run().toString();
+
+    assertEquals(first, second);
+  }
+
+  @Test
+  public void run_countsEveryShowOpportunity() {
+    SessionSimulator.Report report =
+        new SessionSimulator.Builder()
+            .setSeed(1)
+            .setSessionCount(300)
+            .build(application, activity)
+            .run();
+
+    AdMetrics.Snapshot metrics = report.metrics;
+    assertTrue(report.toString(), metrics.loadsFilled > 0);
+    assertTrue(report.toString(), metrics.showsStarted > 0);
+    assertTrue(report.toString(), metrics.loadsFilled <= metrics.loadRequests);
+    assertTrue(
+        report.toString(),
+        metrics.showsStarted + metrics.showsCapped <= metrics.showOpportunities);
+  }
+
+  @Test
+  public void run_shortSessions_neverExceedTheDailyCap() {
+    SessionSimulator.Report report =
+        new SessionSimulator.Builder()
+            .setSeed(7)
+            .setSessionCount(500)
+            .setMeanSessionMillis(60000, 5 * 60000)
+            .setMeanNavigationsPerSession(4)
+            .setShowFailureRate(0)
+            .build(application, activity)
+            .run();
+
+    long days = report.virtualDurationMillis / DAY_MILLIS + 1;
+    assertTrue(report.toString(), report.metrics.showsCapped > 0);
+    assertTrue(report.toString(), report.metrics.showsStarted <= 12 * days);
+  }
+
+  @Test
+  public void run_processDeathInEveryBackground_releasesTheCachedAds() {
+    SessionSimulator.Report report =
+        new SessionSimulator.Builder()
+            .setSeed(3)
+            .setSessionCount(100)
+            .setProcessDeathRate(1)
+            .setFillRate(1)
+            .build(application, activity)
+            .run();
+
+    assertEquals(100, report.processDeaths);
+    assertTrue(report.toString(), report.metrics.adsReleasedUnused > 0);
+    assertTrue(report.toString(), report.getWastedLoadRate() > 0);
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Checks the show eligibility and the background duration ring of {@link SessionTimer}. */
+public class SessionTimerTest {
+
+  private static final long MIN_BACKGROUND_MILLIS = 30000L;
+  private static final int CAPACITY = 4;
+
+  private SessionTimer timer;
+  private long now;
+
+  @Before
+  public void setUp() {
+    timer = new SessionTimer(MIN_BACKGROUND_MILLIS, CAPACITY);
+    timer.onForeground(now);
+  }
+
+  @Test
+  public void firstForeground_isAnEligibleColdStart() {
+    assertTrue(timer.isColdStart());
+    assertTrue(timer.isShowEligible());
+    assertEquals(-1, timer.getLastBackgroundMillis());
+  }
+
+  @Test
+  public void warmReturn_isOnlyEligibleAfterTheMinimum() {
+    assertFalse(returnAfter(MIN_BACKGROUND_MILLIS - 1));
+    assertFalse(timer.isColdStart());
+    assertEquals(MIN_BACKGROUND_MILLIS - 1, timer.getLastBackgroundMillis());
+
+    assertTrue(returnAfter(MIN_BACKGROUND_MILLIS));
+  }
+
+  @Test
+  public void repeatedQuickSwitches_doNotMoveTheMinimum() {
+    for (int i = 0; i < CAPACITY; i++) {
+      returnAfter(2 * MIN_BACKGROUND_MILLIS);
+    }
+
+    assertTrue(returnAfter(MIN_BACKGROUND_MILLIS));
+  }
+
+  @Test
+  public void statsSummary_countsTheShortSwitchesInTheRing() {
+    returnAfter(1000);
+    returnAfter(MIN_BACKGROUND_MILLIS);
+    returnAfter(2000);
+
+    assertTrue(timer.getStatsSummary().contains("returns=3 shortSwitches=2"));
+  }
+
+  @Test
+  public void ringWrapsAround_forgetsTheOldestReturns() {
+    for (int i = 0; i < CAPACITY; i++) {
+      returnAfter(1000);
+    }
+    for (int i = 0; i < CAPACITY - 1; i++) {
+      returnAfter(MIN_BACKGROUND_MILLIS);
+    }
+
+    assertTrue(timer.getStatsSummary().contains("returns=4 shortSwitches=1"));
+  }
+
+  @Test
+  public void constructor_invalidCapacity_throws() {
+    assertThrows(IllegalArgumentException.class, () -> new SessionTimer(MIN_BACKGROUND_MILLIS, 0));
+  }
+
+  /** Spend the given time in the background and report if the return may show an ad. */
+  private boolean returnAfter(long backgroundMillis) {
+    timer.onBackground(now);
+    now += backgroundMillis;
+    timer.onForeground(now);
+    return timer.isShowEligible();
+  }
+}
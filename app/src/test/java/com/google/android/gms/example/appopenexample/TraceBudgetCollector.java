@@ -0,0 +1,71 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import static org.junit.Assert.fail;
+
+import androidx.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the durations of the {@link AdTrace} slices a test exercises and checks them against
+ * their budgets, which the app itself only emits as trace sections.
+ */
+final class TraceBudgetCollector implements AdTrace.SliceListener {
+
+  private final List<String> overBudget = new ArrayList<>();
+  private int sliceCount;
+
+  /** Start receiving slice durations. Call {@link #uninstall()} when the test is done. */
+  @NonNull
+  static TraceBudgetCollector install() {
+    TraceBudgetCollector collector = new TraceBudgetCollector();
+    AdTrace.setSliceListener(collector);
+    return collector;
+  }
+
+  /** Stop receiving slice durations. */
+  void uninstall() {
+    AdTrace.setSliceListener(null);
+  }
+
+  @Override
+  public synchronized void onSliceEnded(@NonNull AdTrace.Slice slice, long durationMillis) {
+    sliceCount++;
+    if (durationMillis > slice.budgetMillis) {
+      overBudget.add(
+          slice.sectionName
+              + " took "
+              + durationMillis
+              + "ms, over its "
+              + slice.budgetMillis
+              + "ms budget");
+    }
+  }
+
+  /** Number of slices that ended since the collector was installed. */
+  synchronized int getSliceCount() {
+    return sliceCount;
+  }
+
+  /** Fail the test if any slice ran over its budget. */
+  synchronized void assertWithinBudgets() {
+    if (!overBudget.isEmpty()) {
+      fail(String.join("\n", overBudget));
+    }
+  }
+}
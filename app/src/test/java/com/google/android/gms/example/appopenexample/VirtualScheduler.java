@@ -0,0 +1,120 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample;
+
+import androidx.annotation.NonNull;
+import java.util.PriorityQueue;
+
+/**
+ * {@link Scheduler} with a virtual clock. Time only moves when the owner advances it, and due
+ * tasks run on the calling thread in time order (ties in scheduling order), so simulations built
+ * on it are fast and fully deterministic.
+ *
+ * <p>Not thread safe; a simulation drives it from a single thread.
+ */
+final class VirtualScheduler implements Scheduler {
+
+  /** A scheduled task; cancelled tasks stay queued and are skipped when due. */
+  private static final class Task implements Cancellable {
+    final long dueTime;
+    final long sequence;
+    final Runnable runnable;
+    boolean isCancelled;
+
+    Task(long dueTime, long sequence, Runnable runnable) {
+      this.dueTime = dueTime;
+      this.sequence = sequence;
+      this.runnable = runnable;
+    }
+
+    @Override
+    public void cancel() {
+      isCancelled = true;
+    }
+  }
+
+  private final PriorityQueue<Task> tasks =
+      new PriorityQueue<>(
+          16,
+          (a, b) ->
+              a.dueTime != b.dueTime
+                  ? Long.compare(a.dueTime, b.dueTime)
+                  : Long.compare(a.sequence, b.sequence));
+  private long now;
+  private long nextSequence;
+
+  @Override
+  public long now() {
+    return now;
+  }
+
+  /** Wall-clock time, which starts at the epoch and advances in step with the virtual clock. */
+  @Override
+  public long currentTimeMillis() {
+    return now;
+  }
+
+  @Override
+  public Cancellable schedule(@NonNull Runnable task, long delayMillis) {
+    Task scheduled = new Task(now + Math.max(0, delayMillis), nextSequence++, task);
+    tasks.add(scheduled);
+    return scheduled;
+  }
+
+  /** Advance the clock by the given time, running every task that becomes due on the way. */
+  void advanceBy(long millis) {
+    advanceTo(now + millis);
+  }
+
+  /** Advance the clock to the given time, running every task that becomes due on the way. */
+  void advanceTo(long timeMillis) {
+    Task task;
+    while ((task = tasks.peek()) != null && task.dueTime <= timeMillis) {
+      tasks.poll();
+      now = Math.max(now, task.dueTime);
+      if (!task.isCancelled) {
+        task.runnable.run();
+      }
+    }
+    now = Math.max(now, timeMillis);
+  }
+
+  /**
+   * Run tasks in time order until the condition holds or the deadline passes.
+   *
+   * @return true if the condition holds
+   */
+  boolean advanceUntil(@NonNull Condition condition, long deadlineMillis) {
+    Task task;
+    while (!condition.isMet() && (task = tasks.peek()) != null && task.dueTime <= deadlineMillis) {
+      tasks.poll();
+      now = Math.max(now, task.dueTime);
+      if (!task.isCancelled) {
+        task.runnable.run();
+      }
+    }
+    if (condition.isMet()) {
+      return true;
+    }
+    now = Math.max(now, deadlineMillis);
+    return false;
+  }
+
+  /** Condition checked between tasks by {@link #advanceUntil}. */
+  interface Condition {
+    boolean isMet();
+  }
+}
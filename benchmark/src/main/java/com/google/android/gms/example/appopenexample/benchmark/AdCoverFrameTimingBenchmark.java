@@ -0,0 +1,54 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample.benchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.FrameTimingMetric;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import java.util.Collections;
+import kotlin.Unit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Measures frame timing of the ad cover overlay shown around the (fake) app open ad. */
+@RunWith(JUnit4.class)
+public class AdCoverFrameTimingBenchmark {
+
+  private static final int ITERATIONS = 10;
+
+  @Rule public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+  @Test
+  public void adCoverFlow() {
+    benchmarkRule.measureRepeated(
+        AppFlows.PACKAGE_NAME,
+        Collections.singletonList(new FrameTimingMetric()),
+        CompilationMode.DEFAULT,
+        StartupMode.WARM,
+        ITERATIONS,
+        scope -> {
+          AppFlows.startAndWaitForMain(scope);
+          return Unit.INSTANCE;
+        },
+        scope -> {
+          AppFlows.runAdCoverFlow(scope);
+          return Unit.INSTANCE;
+        });
+  }
+}
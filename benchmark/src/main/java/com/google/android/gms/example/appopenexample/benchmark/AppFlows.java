@@ -0,0 +1,73 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample.benchmark;
+
+import android.content.Intent;
+import androidx.benchmark.macro.MacrobenchmarkScope;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.UiObject2;
+import androidx.test.uiautomator.Until;
+
+/** User flows shared by the benchmarks and the Baseline Profile generator. */
+final class AppFlows {
+
+  static final String PACKAGE_NAME = "com.google.android.gms.example.appopenexample";
+
+  /** Mirrors SplashActivity.EXTRA_STARTUP_BUDGET_MILLIS. */
+  private static final String EXTRA_STARTUP_BUDGET_MILLIS = "startup_budget_millis";
+
+  /** Splash budget used while benchmarking, so a slow stage cannot hide behind the default. */
+  private static final long STARTUP_BUDGET_MILLIS = 3000;
+
+  private static final long WAIT_TIMEOUT_MILLIS = 10000;
+
+  /** Time the fake ad stays on screen in benchmark builds, plus some slack. */
+  private static final long AD_FLOW_TIMEOUT_MILLIS = 5000;
+
+  private AppFlows() {}
+
+  /** Launch the app from the splash screen and wait until the MainActivity is interactive. */
+  static void startAndWaitForMain(MacrobenchmarkScope scope) {
+    Intent intent = new Intent(Intent.ACTION_MAIN);
+    intent.addCategory(Intent.CATEGORY_LAUNCHER);
+    intent.setPackage(PACKAGE_NAME);
+    intent.putExtra(EXTRA_STARTUP_BUDGET_MILLIS, STARTUP_BUDGET_MILLIS);
+    scope.startActivityAndWait(intent);
+    waitForShowAdButton(scope);
+  }
+
+  /**
+   * Tap the show ad button, which puts up the ad cover overlay, shows the fake ad and moves on to
+   * the next activity once the ad is dismissed.
+   */
+  static void runAdCoverFlow(MacrobenchmarkScope scope) {
+    UiObject2 showAd = waitForShowAdButton(scope);
+    showAd.click();
+    scope.getDevice().waitForIdle(AD_FLOW_TIMEOUT_MILLIS);
+    waitForShowAdButton(scope);
+  }
+
+  private static UiObject2 waitForShowAdButton(MacrobenchmarkScope scope) {
+    UiObject2 button =
+        scope
+            .getDevice()
+            .wait(Until.findObject(By.res(PACKAGE_NAME, "showAd")), WAIT_TIMEOUT_MILLIS);
+    if (button == null) {
+      throw new IllegalStateException("Show ad button did not appear");
+    }
+    return button;
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample.benchmark;
+
+import androidx.benchmark.macro.junit4.BaselineProfileRule;
+import kotlin.Unit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Generates the Baseline Profile for the app module.
+ *
+ * <p>The checked-in {@code app/src/main/baseline-prof.txt} is a hand-written placeholder that
+ * lists whole classes of the startup and ad paths with wildcards; replace it with this
+ * generator's output. Run it on a rooted device or an emulator with a userdebug image:
+ *
+ * <pre>
+ * ./gradlew :benchmark:connectedBenchmarkAndroidTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.class=\
+ * com.google.android.gms.example.appopenexample.benchmark.BaselineProfileGenerator
+ * </pre>
+ *
+ * then copy {@code BaselineProfileGenerator_generate-baseline-prof.txt} from {@code
+ * benchmark/build/outputs/connected_android_test_additional_output/} to {@code
+ * app/src/main/baseline-prof.txt} and check {@link StartupBenchmark} before and after.
+ */
+@RunWith(JUnit4.class)
+public class BaselineProfileGenerator {
+
+  @Rule public BaselineProfileRule baselineProfileRule = new BaselineProfileRule();
+
+  @Test
+  public void generate() {
+    baselineProfileRule.collect(
+        AppFlows.PACKAGE_NAME,
+        scope -> {
+          scope.pressHome();
+          AppFlows.startAndWaitForMain(scope);
+          AppFlows.runAdCoverFlow(scope);
+          return Unit.INSTANCE;
+        });
+  }
+}
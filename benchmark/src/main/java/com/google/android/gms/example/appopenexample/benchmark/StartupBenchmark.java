@@ -0,0 +1,83 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.example.appopenexample.benchmark;
+
+import androidx.benchmark.macro.BaselineProfileMode;
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import kotlin.Unit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Measures cold, warm and hot startup of the Splash to Main path, with and without the Baseline
+ * Profile, against the benchmark build that serves ads from the fake ad loader.
+ */
+@RunWith(Parameterized.class)
+public class StartupBenchmark {
+
+  private static final int ITERATIONS = 10;
+
+  @Rule public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+  private final StartupMode startupMode;
+  private final CompilationMode compilationMode;
+
+  public StartupBenchmark(StartupMode startupMode, CompilationMode compilationMode) {
+    this.startupMode = startupMode;
+    this.compilationMode = compilationMode;
+  }
+
+  @Parameterized.Parameters(name = "{0}-{1}")
+  public static Collection<Object[]> parameters() {
+    CompilationMode none = new CompilationMode.None();
+    CompilationMode baselineProfile = new CompilationMode.Partial(BaselineProfileMode.Require);
+    return Arrays.asList(
+        new Object[][] {
+          {StartupMode.COLD, none},
+          {StartupMode.COLD, baselineProfile},
+          {StartupMode.WARM, none},
+          {StartupMode.WARM, baselineProfile},
+          {StartupMode.HOT, none},
+          {StartupMode.HOT, baselineProfile},
+        });
+  }
+
+  @Test
+  public void startup() {
+    benchmarkRule.measureRepeated(
+        AppFlows.PACKAGE_NAME,
+        Collections.singletonList(new StartupTimingMetric()),
+        compilationMode,
+        startupMode,
+        ITERATIONS,
+        scope -> {
+          scope.pressHome();
+          return Unit.INSTANCE;
+        },
+        scope -> {
+          AppFlows.startAndWaitForMain(scope);
+          return Unit.INSTANCE;
+        });
+  }
+}